@@ -0,0 +1,45 @@
+package Library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Testovací katalogy pro benchmarky
+ */
+class Catalogs {
+    /**
+     * Vytvoří katalog náhodných, ale pro danou velikost vždy stejných knih
+     * @param size počet knih
+     * @return knihy s unikátními názvy a ISBN, zhruba třetina přečtených
+     */
+    static List<Book> generateBooks(int size) {
+        Random random = new Random(size);
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Book book = new Book("Title " + i + " " + Long.toString(random.nextLong() & Long.MAX_VALUE, 36),
+                    "Author " + random.nextInt(Math.max(1, size / 20)), "Genre " + random.nextInt(50),
+                    50 + random.nextInt(950), isbn(i));
+            book.setRead(random.nextInt(3) == 0);
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * @return nové knihy se stejnými údaji, které ještě nepatří žádné knihovně
+     */
+    static List<Book> copies(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book book : books) {
+            Book copy = new Book(book.getTitle(), book.getAuthor(), book.getGenre(), book.getPages(), book.getIsbn());
+            copy.setRead(book.isRead());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+}
@@ -0,0 +1,138 @@
+package Library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propustnost {@link ConcurrentLibrary} při souběžném čtení, samotném i se zapisujícím vláknem.
+ * <p>
+ * Přes {@link #main(String[])} proběhne pro 1 až N čtecích vláken a vypíše tabulku
+ * operací za sekundu, podle ní je vidět, jak čtení škáluje s počtem jader:
+ * {@code gradle jmhScaling --args=8}. Samotné benchmarky jdou spustit i přes JMH s -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ConcurrentLibraryBenchmark {
+    @Param({"100000"})
+    public int size;
+
+    private List<Book> books;
+    private ConcurrentLibrary library;
+
+    @Setup
+    public void setUp() {
+        books = Catalogs.generateBooks(size);
+        library = new ConcurrentLibrary();
+        library.addAllBooks(books);
+    }
+
+    private Book randomBook() {
+        return books.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    /**
+     * Hledání v indexu podle názvu, pod čtecím zámkem
+     */
+    @Benchmark
+    public List<Book> lookup() {
+        return library.findByTitle(randomBook().getTitle());
+    }
+
+    /**
+     * Optimistické čtení čítače
+     */
+    @Benchmark
+    public int countRead() {
+        return library.countRead();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public List<Book> mixedLookup() {
+        return lookup();
+    }
+
+    /**
+     * Zápis, který knihovnu vrátí do původního stavu: odebrání a nové přidání knihy
+     */
+    @Benchmark
+    @Group("mixed")
+    public int mixedWrite() {
+        Book book = randomBook();
+        synchronized (book) {
+            // Dva zapisovače nesmí odebrat tutéž knihu naráz
+            library.removeBook(book);
+            library.addBook(book);
+        }
+        return library.size();
+    }
+
+    /**
+     * @param args nejvyšší počet čtecích vláken, výchozí je počet jader
+     * @throws RunnerException chyba při běhu JMH
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> rows = new ArrayList<>();
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            Options readOnly = new OptionsBuilder()
+                    .include(ConcurrentLibraryBenchmark.class.getSimpleName() + "\\.(lookup|countRead)$")
+                    .threads(threads)
+                    .build();
+            Options mixed = new OptionsBuilder()
+                    .include(ConcurrentLibraryBenchmark.class.getSimpleName() + "\\.mixed")
+                    .threadGroups(threads, 1)
+                    .build();
+            Collection<RunResult> readResults = new Runner(readOnly).run();
+            Collection<RunResult> mixedResults = new Runner(mixed).run();
+            rows.add(String.format(Locale.ROOT, "%d,%.0f,%.0f,%.0f,%.0f", threads,
+                    score(readResults, "lookup"), score(readResults, "countRead"),
+                    score(mixedResults, "mixedLookup"), score(mixedResults, "mixedWrite")));
+        }
+        System.out.println("threads,lookupOpsPerSec,countReadOpsPerSec,lookupWithWriterOpsPerSec,writerOpsPerSec");
+        rows.forEach(System.out::println);
+    }
+
+    /**
+     * Najde výsledek metody, u skupiny je mezi vedlejšími výsledky
+     */
+    private static double score(Collection<RunResult> results, String method) {
+        for (RunResult result : results) {
+            if (result.getParams().getBenchmark().endsWith("." + method)) {
+                return result.getPrimaryResult().getScore();
+            }
+            Result<?> secondary = result.getSecondaryResults().get(method);
+            if (secondary != null) {
+                return secondary.getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
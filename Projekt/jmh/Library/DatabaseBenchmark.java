@@ -0,0 +1,122 @@
+package Library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dotazy na hodnocení nad vestavěnou Derby databází v paměti. Každá operace si půjčí
+ * připojení z {@link ConnectionPool} stejně jako aplikace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final String URL = "jdbc:derby:memory:benchmark;create=true";
+    private static final int REVIEWS_PER_ISBN = 100;
+    private static final int SAVE_BATCH = 1000;
+
+    @Param({"10000", "100000"})
+    public int reviews;
+
+    private ConnectionPool pool;
+    private int isbnCount;
+    private Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, 2, 10_000, 60_000);
+        random = new Random(reviews);
+        isbnCount = Math.max(1, reviews / REVIEWS_PER_ISBN);
+        try (Connection connection = pool.getConnection()) {
+            SchemaMigrations.migrate(connection);
+            DatabaseMan.saveReviews(connection, generateReviews(reviews));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        DatabaseMan.clearRatingCache();
+        try {
+            DriverManager.getConnection("jdbc:derby:memory:benchmark;drop=true").close();
+        } catch (SQLException e) {
+            // Derby hlásí úspěšné smazání výjimkou
+        }
+    }
+
+    private String randomIsbn() {
+        return Catalogs.isbn(random.nextInt(isbnCount));
+    }
+
+    private List<Review> generateReviews(int count) {
+        List<Review> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            generated.add(new Review(randomIsbn(), random.nextInt(11), "Note " + i));
+        }
+        return generated;
+    }
+
+    @Benchmark
+    public int getReviews() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return DatabaseMan.getReviews(connection, randomIsbn()).size();
+        }
+    }
+
+    @Benchmark
+    public int getReviewsPage() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return DatabaseMan.getReviewsPage(connection, randomIsbn(), 0, 50).size();
+        }
+    }
+
+    @Benchmark
+    public int getReviewIds() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return DatabaseMan.getReviewIds(connection, randomIsbn()).size();
+        }
+    }
+
+    /**
+     * Agregace bez cache, cache se vyprázdní v každém volání
+     */
+    @Benchmark
+    public int getRatingStats() throws SQLException {
+        DatabaseMan.clearRatingCache();
+        try (Connection connection = pool.getConnection()) {
+            return DatabaseMan.getRatingStats(connection, randomIsbn()).getCount();
+        }
+    }
+
+    /**
+     * Čas je za celou dávku {@value #SAVE_BATCH} hodnocení
+     */
+    @Benchmark
+    public int saveReviews() throws SQLException {
+        List<Review> batch = generateReviews(SAVE_BATCH);
+        try (Connection connection = pool.getConnection()) {
+            return DatabaseMan.saveReviews(connection, batch);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package Library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dotazy a změny v {@link Library} pro různé velikosti katalogu. Změny v benchmarku
+ * knihovnu zase vrátí do původního stavu, aby každé volání měřilo totéž.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<Book> books;
+    private Library library;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        books = Catalogs.generateBooks(size);
+        library = new Library();
+        library.addAllBooks(books);
+        random = new Random(size);
+    }
+
+    private Book randomBook() {
+        return books.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public int getAllBooks() {
+        return library.getAllBooks().size();
+    }
+
+    @Benchmark
+    public int getFilteredBooksRead() {
+        return library.getFilteredBooks(true).size();
+    }
+
+    @Benchmark
+    public int getFilteredBooksUnread() {
+        return library.getFilteredBooks(false).size();
+    }
+
+    @Benchmark
+    public int search() {
+        return library.search("title " + random.nextInt(size), 20).size();
+    }
+
+    @Benchmark
+    public int markBookAsRead() {
+        Book book = randomBook();
+        boolean wasRead = book.isRead();
+        library.markBookAsRead(book.getTitle());
+        book.setRead(wasRead);
+        return library.countRead();
+    }
+
+    @Benchmark
+    public int removeAndAddBook() {
+        Book book = randomBook();
+        library.removeBook(book);
+        library.addBook(book);
+        return library.size();
+    }
+
+    /**
+     * Naplnění prázdné knihovny celým katalogem
+     */
+    @State(Scope.Thread)
+    public static class Fill {
+        List<Book> fresh;
+
+        @Setup(Level.Invocation)
+        public void setUp(LibraryBenchmark benchmark) {
+            fresh = Catalogs.copies(benchmark.books);
+        }
+    }
+
+    @Benchmark
+    public int addAllBooks(Fill fill) {
+        Library target = new Library();
+        target.addAllBooks(fill.fresh);
+        return target.size();
+    }
+}
@@ -0,0 +1,88 @@
+package Library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Ukládání a načítání celého katalogu jako XML, nekomprimovaného i komprimovaného.
+ * Čas je za celý katalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XmlBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<Book> books;
+    private Path plainFile;
+    private Path compressedFile;
+    private Path target;
+
+    @Setup
+    public void setUp() throws IOException {
+        books = Catalogs.generateBooks(size);
+        plainFile = Files.createTempFile("library-benchmark", ".xml");
+        compressedFile = Files.createTempFile("library-benchmark", ".xml.gz");
+        target = Files.createTempFile("library-benchmark", ".xml");
+        XmlHandler.saveLibrary(books, plainFile, false);
+        XmlHandler.saveLibrary(books, compressedFile, true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(plainFile);
+        Files.deleteIfExists(compressedFile);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public boolean saveLibrary() {
+        return XmlHandler.saveLibrary(books, target, false);
+    }
+
+    @Benchmark
+    public boolean saveLibraryCompressed() {
+        return XmlHandler.saveLibrary(books, target, true);
+    }
+
+    @Benchmark
+    public long loadLibrary() {
+        try (Stream<Book> loaded = XmlHandler.streamLibrary(plainFile)) {
+            return loaded.count();
+        }
+    }
+
+    @Benchmark
+    public void loadLibraryParallel(Blackhole blackhole) throws IOException {
+        XmlHandler.loadLibraryParallel(plainFile, blackhole::consume);
+    }
+
+    @Benchmark
+    public long loadLibraryCompressed() {
+        try (Stream<Book> loaded = XmlHandler.streamLibrary(compressedFile)) {
+            return loaded.count();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package Library;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Binární snapshot knihovny jako rychlejší alternativa k library.xml.
+ * <p>
+ * Formát: hlavička (magic "LIBS", verze, počet knih) a za ní záznamy knih.
+ * Řetězce jsou uložené jako délka v bajtech (-1 pro null) a UTF-8 data,
+ * počet stran jako int a přečtení jako jeden bajt.
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int COUNT_POSITION = 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Uloží knihy do výchozího souboru library.bin
+     * @param books obsah knihovny
+     * @throws IOException chyba při zápisu
+     */
+    public static void save(Iterable<Book> books) throws IOException {
+        save(books, LibraryFiles.binarySnapshot());
+    }
+
+    /**
+     * Uloží knihy do binárního souboru. Knihy se zapisují postupně, počet v hlavičce
+     * se doplní až na konci, takže je nemusí mít volající všechny v paměti.
+     * Zapisuje se do dočasného souboru, který původní nahradí až celý zapsaný,
+     * stejně jako {@link XmlHandler#saveLibrary(List, Path, boolean)}.
+     * @param books obsah knihovny
+     * @param path cesta k souboru
+     * @throws IOException chyba při zápisu, původní soubor zůstane beze změny
+     */
+    public static void save(Iterable<Book> books, Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            write(books, temp);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        XmlHandler.syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    private static void write(Iterable<Book> books, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+            int count = 0;
+            for (Book book : books) {
+                byte[] title = encode(book.getTitle());
+                byte[] author = encode(book.getAuthor());
+                byte[] genre = encode(book.getGenre());
+                byte[] isbn = encode(book.getIsbn());
+                int size = 4 * Integer.BYTES + length(title) + length(author) + length(genre) + length(isbn)
+                        + Integer.BYTES + 1;
+                if (buffer.remaining() < size) {
+                    drain(channel, buffer);
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocate(size);
+                    }
+                }
+                putString(buffer, title);
+                putString(buffer, author);
+                putString(buffer, genre);
+                buffer.putInt(book.getPages());
+                putString(buffer, isbn);
+                buffer.put((byte) (book.isRead() ? 1 : 0));
+                count++;
+            }
+            drain(channel, buffer);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), COUNT_POSITION);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Načte knihy z výchozího souboru library.bin
+     * @return načtené knihy
+     * @throws IOException chyba při čtení nebo neplatný soubor
+     */
+    public static List<Book> load() throws IOException {
+        return load(LibraryFiles.binarySnapshot());
+    }
+
+    /**
+     * Načte knihy z binárního souboru
+     * @param path cesta k souboru
+     * @return načtené knihy
+     * @throws IOException chyba při čtení nebo neplatný soubor
+     */
+    public static List<Book> load(Path path) throws IOException {
+        List<Book> books = new ArrayList<>();
+        load(path, books::add);
+        return books;
+    }
+
+    /**
+     * Načte knihy z binárního souboru namapovaného do paměti a předá je jednu po druhé
+     * @param path cesta k souboru
+     * @param consumer příjemce načtených knih
+     * @throws IOException chyba při čtení nebo neplatný soubor
+     */
+    public static void load(Path path, Consumer<Book> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("File " + path + " is not a library snapshot");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + path + " is larger than 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("File " + path + " is not a library snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            int count = buffer.getInt();
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < count; i++) {
+                Book book = new Book();
+                book.setTitle(getString(buffer, scratch));
+                book.setAuthor(getString(buffer, scratch));
+                book.setGenre(getString(buffer, scratch));
+                book.setPages(buffer.getInt());
+                book.setIsbn(getString(buffer, scratch));
+                book.setRead(buffer.get() != 0);
+                consumer.accept(book);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot " + path + " is truncated", e);
+        }
+    }
+
+    /**
+     * Převede library.xml do binárního snapshotu library.bin
+     * @throws IOException chyba při zápisu
+     */
+    public static void convertFromXml() throws IOException {
+        try (Stream<Book> stream = XmlHandler.streamLibrary()) {
+            save(stream::iterator);
+        }
+    }
+
+    /**
+     * Převede binární snapshot library.bin zpět do library.xml
+     * @throws IOException chyba při čtení nebo library.xml nejde uložit
+     */
+    public static void convertToXml() throws IOException {
+        if (!XmlHandler.saveLibrary(load())) {
+            throw new IOException("Cannot save " + LibraryFiles.catalog());
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            // Poškozená délka by jinak alokovala až 2 GB
+            throw new IOException("Snapshot is corrupted: string of " + length + " bytes at " + buffer.position());
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Převod mezi formáty z příkazové řádky: "export" (XML -> bin) nebo "import" (bin -> XML)
+     * @param args směr převodu
+     * @throws IOException chyba při převodu
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && args[0].equals("export")) {
+            convertFromXml();
+        } else if (args.length == 1 && args[0].equals("import")) {
+            convertToXml();
+        } else {
+            System.out.println("Usage: BinarySnapshot export|import");
+        }
+    }
+}
@@ -14,10 +14,15 @@ public class Book {
 
     private String isbn;
 
+    // Knihovna, ve které je kniha evidovaná, a pozice knihy v jejím sloupcovém úložišti
+    private Library library;
+
+    private int slot = -1;
+
     public Book(String title, String author, String genre, int pages, String isbn) {
         this.title = title;
-        this.author = author;
-        this.genre = genre;
+        this.author = StringPool.AUTHORS.canonical(author);
+        this.genre = StringPool.GENRES.canonical(genre);
         this.read = false;
         this.pages = pages;
         this.isbn = isbn;
@@ -44,7 +49,7 @@ public class Book {
 
     @LoadLib(name = "author")
     public void setAuthor(String author) {
-        this.author = author;
+        this.author = StringPool.AUTHORS.canonical(author);
     }
 
     @SaveLib(name = "genre")
@@ -54,7 +59,7 @@ public class Book {
 
     @LoadLib(name = "genre")
     public void setGenre(String genre) {
-        this.genre = genre;
+        this.genre = StringPool.GENRES.canonical(genre);
     }
 
     @SaveLib(name = "read")
@@ -64,7 +69,11 @@ public class Book {
 
     @LoadLib(name = "read")
     public void setRead(boolean read) {
-        this.read = read;
+        if (library != null) {
+            library.setRead(this, read);
+        } else {
+            this.read = read;
+        }
     }
 
     @SaveLib(name = "pages")
@@ -74,7 +83,11 @@ public class Book {
 
     @LoadLib(name = "pages")
     public void setPages(int pages) {
-        this.pages = pages;
+        if (library != null) {
+            library.setPages(this, pages);
+        } else {
+            this.pages = pages;
+        }
     }
 
     @SaveLib(name = "isbn")
@@ -94,6 +107,49 @@ public class Book {
     }
 
     public void markAsRead() {
-        this.read = true;
+        setRead(true);
+    }
+
+    /**
+     * @return nová kniha se stejnými údaji, která nepatří žádné knihovně
+     */
+    Book copy() {
+        Book copy = new Book();
+        copy.title = title;
+        copy.author = author;
+        copy.genre = genre;
+        copy.read = read;
+        copy.pages = pages;
+        copy.isbn = isbn;
+        return copy;
+    }
+
+    Library getLibrary() {
+        return library;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Změní přečtení bez upozornění knihovny, volá ho knihovna při úpravě bitmapy přečtených knih
+     * @param read přečtená nebo ne
+     */
+    void updateRead(boolean read) {
+        this.read = read;
+    }
+
+    /**
+     * Změní počet stran bez upozornění knihovny, volá ho knihovna při úpravě sloupce stran
+     * @param pages počet stran
+     */
+    void updatePages(int pages) {
+        this.pages = pages;
+    }
+
+    void attach(Library library, int slot) {
+        this.library = library;
+        this.slot = slot;
     }
 }
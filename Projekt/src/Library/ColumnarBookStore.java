@@ -0,0 +1,128 @@
+package Library;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Sloupcové úložiště knih knihovny. Každá kniha má pozici (slot), obsazení a přečtení se
+ * evidují bitmapami a počty stran polem int, takže filtr podle přečtení a součty stran
+ * procházejí jen primitivní pole a knihy samotné nečtou.
+ * <p>
+ * Řetězcové údaje zůstávají v knihách, ty jsou pro ně pohledem a indexy knihovny
+ * (strom podle názvu, ISBN, fulltext) s nimi pracují přímo.
+ */
+final class ColumnarBookStore {
+    private Book[] books = new Book[16];
+    private int[] pages = new int[16];
+    private final BitSet used = new BitSet();
+    private final BitSet read = new BitSet();
+    private int firstFree;
+    // Za poslední obsazenou pozicí už nic není, součty nemusí procházet celé pole
+    private int end;
+    private int readCount;
+
+    /**
+     * Uloží knihu na první volnou pozici
+     * @param book ukládaná kniha
+     * @return pozice knihy
+     */
+    int add(Book book) {
+        int slot = used.nextClearBit(firstFree);
+        if (slot >= books.length) {
+            books = Arrays.copyOf(books, books.length * 2);
+            pages = Arrays.copyOf(pages, books.length);
+        }
+        books[slot] = book;
+        pages[slot] = book.getPages();
+        used.set(slot);
+        firstFree = slot + 1;
+        end = Math.max(end, slot + 1);
+        if (book.isRead()) {
+            read.set(slot);
+            readCount++;
+        }
+        return slot;
+    }
+
+    /**
+     * Uvolní pozici knihy
+     * @param slot pozice odebírané knihy
+     */
+    void remove(int slot) {
+        if (read.get(slot)) {
+            read.clear(slot);
+            readCount--;
+        }
+        used.clear(slot);
+        books[slot] = null;
+        pages[slot] = 0;
+        firstFree = Math.min(firstFree, slot);
+        if (slot + 1 == end) {
+            end = used.previousSetBit(slot) + 1;
+        }
+    }
+
+    /**
+     * @return true pokud se stav přečtení na pozici změnil
+     */
+    boolean setRead(int slot, boolean value) {
+        if (read.get(slot) == value) {
+            return false;
+        }
+        read.set(slot, value);
+        readCount += value ? 1 : -1;
+        return true;
+    }
+
+    void setPages(int slot, int value) {
+        pages[slot] = value;
+    }
+
+    int countRead() {
+        return readCount;
+    }
+
+    /**
+     * Přidá do seznamu přečtené nebo nepřečtené knihy v pořadí pozic
+     * @param value true pro přečtené, false pro nepřečtené knihy
+     * @param result seznam, do kterého se knihy přidají
+     */
+    void collect(boolean value, List<Book> result) {
+        if (value) {
+            for (int slot = read.nextSetBit(0); slot >= 0; slot = read.nextSetBit(slot + 1)) {
+                result.add(books[slot]);
+            }
+        } else {
+            // Skáče se jen po nepřečtených pozicích, přečtené knihy se vůbec neprocházejí
+            for (int slot = read.nextClearBit(0); slot < end; slot = read.nextClearBit(slot + 1)) {
+                if (used.get(slot)) {
+                    result.add(books[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return součet stran všech knih, volné pozice mají 0 stran
+     */
+    long sumPages() {
+        long sum = 0;
+        for (int slot = 0; slot < end; slot++) {
+            sum += pages[slot];
+        }
+        return sum;
+    }
+
+    /**
+     * @param value true pro přečtené, false pro nepřečtené knihy
+     * @return součet stran přečtených nebo nepřečtených knih
+     */
+    long sumPages(boolean value) {
+        long sum = 0;
+        for (int slot = read.nextSetBit(0); slot >= 0; slot = read.nextSetBit(slot + 1)) {
+            sum += pages[slot];
+        }
+        return value ? sum : sumPages() - sum;
+    }
+}
@@ -0,0 +1,209 @@
+package Library;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Knihovna, kterou mohou současně používat víc vláken (UI, import na pozadí, autosave).
+ * <p>
+ * Čítače (velikost, počet přečtených, verze) se čtou optimisticky bez zámku a jen když je
+ * mezitím přerušil zápis, přečtou se znovu pod čtecím zámkem. Dotazy procházející stromy
+ * a indexy drží čtecí zámek vždy, souběžně měněná mapa by mohla vrátit nesmysl. Zápisy
+ * (přidání, označení, odstranění) drží zápisový zámek, takže se navenek chovají, jako by
+ * proběhly naráz. Zámek není reentrantní, metody Library proto uvnitř zápisu nesmí volat
+ * přepisovatelné metody.
+ * <p>
+ * Na rozdíl od {@link Library} vrací všechny metody kopie, ne pohledy na vnitřní data.
+ */
+public class ConcurrentLibrary extends Library {
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Přečte čítač optimisticky, při souběžném zápisu ho přečte znovu pod čtecím zámkem.
+     * Jen pro primitivní pole, čtení struktur knihovny patří pod {@link #readLocked(Supplier)}.
+     * @param counter čtení čítače
+     * @return hodnota čítače
+     */
+    private long readCounter(LongSupplier counter) {
+        long stamp = lock.tryOptimisticRead();
+        long value = counter.getAsLong();
+        if (stamp != 0 && lock.validate(stamp)) {
+            return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return counter.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Čtení struktur knihovny pod čtecím zámkem
+     */
+    private <T> T readLocked(Supplier<T> action) {
+        long stamp = lock.readLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void write(Runnable action) {
+        writeLocked(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T writeLocked(Supplier<T> action) {
+        long stamp = lock.writeLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setJournal(LibraryJournal journal) {
+        write(() -> super.setJournal(journal));
+    }
+
+    @Override
+    public void compactJournal() {
+        readLocked(() -> {
+            super.compactJournal();
+            return null;
+        });
+    }
+
+    /**
+     * Kopie knih vznikne pod čtecím zámkem, zápis do souboru už zámek nedrží
+     */
+    @Override
+    public boolean save() {
+        return readLocked(this::prepareSave).getAsBoolean();
+    }
+
+    @Override
+    public long getVersion() {
+        return readCounter(super::getVersion);
+    }
+
+    @Override
+    public void addBook(Book book) {
+        write(() -> super.addBook(book));
+    }
+
+    /**
+     * Přidá všechny knihy pod jedním zápisovým zámkem, ostatní vlákna uvidí celou dávku naráz
+     */
+    @Override
+    public void addAllBooks(Iterable<Book> books) {
+        write(() -> super.addAllBooks(books));
+    }
+
+    @Override
+    public Book markBookAsRead(String title) {
+        return writeLocked(() -> super.markBookAsRead(title));
+    }
+
+    @Override
+    public void removeBook(String title) {
+        write(() -> super.removeBook(title));
+    }
+
+    @Override
+    public void removeBook(Book book) {
+        write(() -> super.removeBook(book));
+    }
+
+    @Override
+    void setRead(Book book, boolean read) {
+        write(() -> super.setRead(book, read));
+    }
+
+    @Override
+    public boolean containsBook(Book book) {
+        return readLocked(() -> super.containsBook(book));
+    }
+
+    @Override
+    public List<Book> findByIsbn(String isbn) {
+        return readLocked(() -> List.copyOf(super.findByIsbn(isbn)));
+    }
+
+    @Override
+    public List<Book> findByTitle(String title) {
+        return readLocked(() -> List.copyOf(super.findByTitle(title)));
+    }
+
+    @Override
+    public List<Book> search(String query, int limit) {
+        return readLocked(() -> super.search(query, limit));
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        return readLocked(super::getAllBooks);
+    }
+
+    /**
+     * Na rozdíl od {@link Library#getBooks()} vrací seřazenou kopii, pohled by nebyl bezpečný
+     * @return seřazená kopie všech knih
+     */
+    @Override
+    public Collection<Book> getBooks() {
+        return readLocked(() -> List.copyOf(super.getBooks()));
+    }
+
+    @Override
+    void setPages(Book book, int pages) {
+        write(() -> super.setPages(book, pages));
+    }
+
+    @Override
+    public long sumPages() {
+        return readLocked(super::sumPages);
+    }
+
+    @Override
+    public long sumPages(boolean read) {
+        return readLocked(() -> super.sumPages(read));
+    }
+
+    @Override
+    public List<Book> getFilteredBooks(boolean read) {
+        return readLocked(() -> super.getFilteredBooks(read));
+    }
+
+    @Override
+    public int countRead() {
+        return (int) readCounter(super::countRead);
+    }
+
+    @Override
+    public int countUnread() {
+        return (int) readCounter(super::countUnread);
+    }
+
+    @Override
+    public List<String> getNames() {
+        return readLocked(super::getNames);
+    }
+
+    @Override
+    public int size() {
+        return (int) readCounter(super::size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return readCounter(super::size) == 0;
+    }
+}
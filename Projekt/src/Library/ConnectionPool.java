@@ -0,0 +1,370 @@
+package Library;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jednoduchý pool připojení k databázi.
+ * <p>
+ * Počet připojení je omezený, připojení se před půjčením ověří a nefunkční se nahradí novým
+ * (např. po restartu Derby serveru), dlouho nepoužitá připojení se na pozadí zavírají.
+ * Půjčené připojení se vrací do poolu zavoláním {@link Connection#close()}, takže se dá
+ * používat v try-with-resources jako obyčejné připojení.
+ * <p>
+ * Každé připojení si pamatuje své připravené dotazy ({@link Connection#prepareStatement(String)}),
+ * opakovaný dotaz se tak na serveru znovu nepřekládá. Zavření takového dotazu ho jen vrátí do cache.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    private final String url;
+    private final long acquireTimeoutMillis;
+    private final long maxIdleMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong acquireWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong statementsPrepared = new AtomicLong();
+    private final AtomicLong statementsReused = new AtomicLong();
+
+    /**
+     * @param url JDBC adresa databáze
+     * @param maxSize maximální počet současně půjčených připojení
+     * @param acquireTimeoutMillis jak dlouho čekat na volné připojení
+     * @param maxIdleMillis po jaké době nečinnosti se připojení zavře
+     */
+    public ConnectionPool(String url, int maxSize, long acquireTimeoutMillis, long maxIdleMillis) {
+        this.url = url;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.maxIdleMillis = maxIdleMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, maxIdleMillis / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Půjčí připojení z poolu, případně otevře nové
+     * @return připojení, které se po použití vrátí zavoláním close()
+     * @throws SQLException pool je zavřený, nepodařilo se připojit nebo vypršel čas čekání
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTimeoutException("No free connection within " + acquireTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection connection = borrowIdle();
+            if (connection == null) {
+                connection = new PooledConnection(DriverManager.getConnection(url));
+                created.incrementAndGet();
+            }
+            acquired.incrementAndGet();
+            acquireWaitNanos.addAndGet(System.nanoTime() - start);
+            return wrap(connection);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Vezme naposledy vrácené připojení, které ještě funguje
+     */
+    private PooledConnection borrowIdle() {
+        PooledConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                if (candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return candidate;
+                }
+            } catch (SQLException e) {
+                // Neplatné připojení se zahodí níže
+            }
+            discard(candidate);
+        }
+        return null;
+    }
+
+    private void release(PooledConnection connection, boolean broken) {
+        try {
+            if (broken || closed || connection.connection.isClosed()) {
+                discard(connection);
+            } else {
+                // Další vypůjčitel nesmí zdědit rozpracovanou transakci
+                endTransaction(connection.connection);
+                connection.returnedAt = System.currentTimeMillis();
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long oldest = System.currentTimeMillis() - maxIdleMillis;
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledConnection candidate = iterator.next();
+            if (candidate.returnedAt < oldest && idle.remove(candidate)) {
+                discard(candidate);
+            }
+        }
+    }
+
+    private void discard(PooledConnection connection) {
+        discarded.incrementAndGet();
+        for (PreparedStatement statement : connection.statements.values()) {
+            closeQuietly(statement);
+        }
+        connection.statements.clear();
+        try {
+            // Derby nezavře připojení s otevřenou transakcí
+            endTransaction(connection.connection);
+        } catch (SQLException e) {
+            // Nefunkční připojení se zkusí zavřít i tak
+        }
+        try {
+            connection.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Vrátí nepotvrzené změny a zapne zpět autocommit
+     */
+    private static void endTransaction(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Dotaz se zahazuje, chyba při zavření nevadí
+        }
+    }
+
+    private Connection wrap(PooledConnection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new PooledHandler(connection));
+    }
+
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    public long getAcquireTimeoutCount() {
+        return acquireTimeouts.get();
+    }
+
+    /**
+     * @return průměrná doba čekání na připojení v milisekundách
+     */
+    public double getAverageAcquireMillis() {
+        long count = acquired.get();
+        return count == 0 ? 0 : acquireWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public long getStatementsPrepared() {
+        return statementsPrepared.get();
+    }
+
+    public long getStatementsReused() {
+        return statementsReused.get();
+    }
+
+    /**
+     * Zavře pool i všechna nepůjčená připojení, půjčená se zavřou při vrácení
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            discard(candidate);
+        }
+    }
+
+    /**
+     * Fyzické připojení s cache připravených dotazů
+     */
+    private static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private long returnedAt;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > MAX_CACHED_STATEMENTS) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * Obal půjčeného připojení, close() ho vrátí do poolu místo zavření
+     */
+    private class PooledHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Connection connection;
+        private boolean released;
+        private boolean broken;
+
+        PooledHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.connection = pooled.connection;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!released) {
+                        released = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                    if (released) {
+                        throw new SQLException("Connection was already returned to the pool");
+                    }
+                }
+            }
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return cachedStatement((Connection) proxy, (String) args[0]);
+                }
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            } catch (SQLException e) {
+                throw failed(e);
+            }
+        }
+
+        /**
+         * SQLState 08xxx = chyba spojení, takové připojení se do poolu nevrací
+         */
+        private Throwable failed(Throwable cause) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && sqlException.getSQLState().startsWith("08")) {
+                broken = true;
+            }
+            return cause;
+        }
+
+        private PreparedStatement cachedStatement(Connection proxy, String sql) throws SQLException {
+            PreparedStatement statement = pooled.statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                pooled.statements.put(sql, statement);
+                statementsPrepared.incrementAndGet();
+            } else {
+                statementsReused.incrementAndGet();
+            }
+            PreparedStatement target = statement;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (statementProxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close" -> {
+                                // Dotaz zůstává připravený pro další použití, jen se vyčistí
+                                target.clearParameters();
+                                target.clearBatch();
+                                return null;
+                            }
+                            case "getConnection" -> {
+                                return proxy;
+                            }
+                            case "equals" -> {
+                                return statementProxy == args[0];
+                            }
+                            case "hashCode" -> {
+                                return System.identityHashCode(statementProxy);
+                            }
+                            default -> {
+                                try {
+                                    return method.invoke(target, args);
+                                } catch (InvocationTargetException e) {
+                                    throw failed(e.getCause());
+                                }
+                            }
+                        }
+                    });
+        }
+    }
+}
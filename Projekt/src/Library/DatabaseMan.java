@@ -2,22 +2,45 @@ package Library;
 
 import javafx.scene.control.ChoiceDialog;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public class DatabaseMan {
     private static final String INSERT_REVIEW_SQL = "INSERT INTO BookReviews (isbn, rating, note) VALUES (?, ?, ?)";
-    private static final String SELECT_REVIEWS_SQL = "SELECT * FROM BookReviews WHERE isbn = ?";
+    private static final String SELECT_REVIEWS_SQL = "SELECT id, rating, note FROM BookReviews WHERE isbn = ?";
+    private static final String SELECT_REVIEW_IDS_SQL = "SELECT id FROM BookReviews WHERE isbn = ?";
+    private static final String SELECT_RATINGS_SQL = "SELECT rating FROM BookReviews WHERE isbn = ?";
+    private static final String SELECT_REVIEWS_PAGE_SQL =
+            "SELECT id, rating, note FROM BookReviews WHERE isbn = ? AND id > ? ORDER BY id FETCH FIRST ? ROWS ONLY";
 
     private static final String DELETE_REVIEW_SQL = "DELETE FROM BookReviews WHERE id = ?";
-    private static final String CREATE_REVIEWS_TABLE_SQL = "CREATE TABLE BookReviews (" +
-            "id INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY," +
-            "isbn VARCHAR(20)," +
-            "rating INT," +
-            "note VARCHAR(255)" +
-            ")";
+    private static final String SELECT_REVIEW_RATING_SQL = "SELECT isbn, rating FROM BookReviews WHERE id = ?";
+    private static final String SELECT_RATING_STATS_SQL =
+            "SELECT rating, COUNT(*) FROM BookReviews WHERE isbn = ? GROUP BY rating";
+    private static final String SELECT_RATING_STATS_IN_SQL =
+            "SELECT isbn, rating, COUNT(*) FROM BookReviews WHERE isbn IN (%s) GROUP BY isbn, rating";
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_BATCHES_PER_COMMIT = 10;
+    private static final int RATING_STATS_CHUNK = 100;
+    private static final int[] IN_LIST_SIZES = {1, 10, 25, 50, RATING_STATS_CHUNK};
+
+    private static final RatingCache RATING_CACHE = new RatingCache(10_000);
+
+    private static final Metrics.Counter SQL_ERRORS = Metrics.counter("db.sqlErrors");
 
     /**
      * Uloží hodnocení a poznámku knihy do databáze.
@@ -28,11 +51,126 @@ public class DatabaseMan {
      * @throws SQLException SQL výjimka
      */
     public static void saveReview(Connection connection, String isbn, int rating, String note) throws SQLException {
+        RATING_CACHE.changing(isbn);
         try (PreparedStatement statement = connection.prepareStatement(INSERT_REVIEW_SQL)) {
             statement.setString(1, isbn);
             statement.setInt(2, rating);
             statement.setString(3, note);
             statement.executeUpdate();
+            RATING_CACHE.added(isbn, rating);
+        } finally {
+            RATING_CACHE.changed(isbn);
+        }
+    }
+
+    /**
+     * Uloží víc hodnocení najednou po dávkách, výchozí velikost dávky a transakce.
+     * @param connection připojení k databázovému serveru
+     * @param reviews hodnocení k uložení
+     * @return počet uložených hodnocení
+     * @throws SQLException SQL výjimka, rozpracovaná transakce se vrátí zpět
+     */
+    public static int saveReviews(Connection connection, Iterable<Review> reviews) throws SQLException {
+        return saveReviews(connection, reviews, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES_PER_COMMIT);
+    }
+
+    /**
+     * Uloží víc hodnocení najednou. Řádky se posílají na server po dávkách a několik dávek
+     * se potvrdí jednou transakcí, takže import nestojí jeden požadavek a commit na každý řádek.
+     * @param connection připojení k databázovému serveru
+     * @param reviews hodnocení k uložení, můžou se načítat postupně
+     * @param batchSize počet řádků v jedné dávce
+     * @param batchesPerCommit po kolika dávkách se transakce potvrdí
+     * @return počet uložených hodnocení
+     * @throws SQLException SQL výjimka, rozpracovaná transakce se vrátí zpět
+     */
+    public static int saveReviews(Connection connection, Iterable<Review> reviews, int batchSize,
+                                  int batchesPerCommit) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        int saved = 0;
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_REVIEW_SQL)) {
+            int inBatch = 0;
+            int batches = 0;
+            for (Review review : reviews) {
+                statement.setString(1, review.getIsbn());
+                statement.setInt(2, review.getRating());
+                statement.setString(3, review.getNote());
+                statement.addBatch();
+                if (++inBatch == batchSize) {
+                    statement.executeBatch();
+                    inBatch = 0;
+                    if (++batches == batchesPerCommit) {
+                        connection.commit();
+                        batches = 0;
+                    }
+                }
+                saved++;
+            }
+            if (inBatch > 0) {
+                statement.executeBatch();
+            }
+            connection.commit();
+        } catch (Throwable e) {
+            // I chyba při čtení hodnocení (např. UncheckedIOException z importu) musí vrátit
+            // rozpracovanou transakci, jinak by ji obnovení autocommitu potvrdilo
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            // Dávky se potvrzují průběžně, souhrny mohou být zastaralé i po chybě
+            if (saved > 0) {
+                RATING_CACHE.clear();
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Hromadně naimportuje hodnocení ze souboru. Každý řádek má tvar "isbn;hodnocení;poznámka",
+     * soubor se čte postupně, takže velikost importu není omezená pamětí.
+     * Řádky ve špatném formátu se přeskočí.
+     * @param connection připojení k databázovému serveru
+     * @param file soubor s hodnoceními v UTF-8
+     * @return počet uložených hodnocení
+     * @throws IOException chyba při čtení souboru
+     * @throws SQLException SQL výjimka
+     */
+    public static int importReviews(Connection connection, Path file) throws IOException, SQLException {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            Stream<Review> reviews = lines
+                    .filter(line -> !line.isBlank())
+                    .map(DatabaseMan::parseReview)
+                    .filter(Objects::nonNull);
+            return saveReviews(connection, reviews::iterator);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Převede řádek importního souboru na hodnocení
+     * @param line řádek "isbn;hodnocení;poznámka"
+     * @return hodnocení nebo null pokud řádek nemá správný formát
+     */
+    private static Review parseReview(String line) {
+        String[] parts = line.split(";", 3);
+        try {
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("missing rating");
+            }
+            int rating = Integer.parseInt(parts[1].trim());
+            if (rating < 0 || rating > 10) {
+                throw new IllegalArgumentException("rating out of range 0-10");
+            }
+            return new Review(parts[0].trim(), rating, parts.length > 2 ? parts[2] : "");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Skipping review line \"" + line + "\": " + e.getMessage());
+            return null;
         }
     }
 
@@ -47,19 +185,76 @@ public class DatabaseMan {
         List<Review> reviews = new ArrayList<>();
         try (PreparedStatement statement = connection.prepareStatement(SELECT_REVIEWS_SQL)) {
             statement.setString(1, isbn);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int id = resultSet.getInt("id");
-                int rating = resultSet.getInt("rating");
-                String note = resultSet.getString("note");
-                Review review = new Review(isbn, rating, note);
-                review.setId(id);
-                reviews.add(review);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    int id = resultSet.getInt(1);
+                    int rating = resultSet.getInt(2);
+                    String note = resultSet.getString(3);
+                    Review review = new Review(isbn, rating, note);
+                    review.setId(id);
+                    reviews.add(review);
+                }
             }
         }
         return reviews;
     }
 
+    /**
+     * Načte jednu stránku hodnocení knihy seřazenou podle ID. Další stránka se načte s ID
+     * posledního hodnocení předchozí stránky, server tak díky indexu (isbn, id) začne rovnou
+     * za ním a nemusí přeskakovat už načtené řádky.
+     * @param connection připojení k databázovému serveru
+     * @param isbn ISBN knihy
+     * @param afterId ID posledního už načteného hodnocení, 0 pro první stránku
+     * @param pageSize maximální počet hodnocení na stránce
+     * @return hodnocení stránky, méně než pageSize znamená poslední stránku
+     * @throws SQLException SQL výjimka
+     */
+    public static List<Review> getReviewsPage(Connection connection, String isbn, int afterId, int pageSize)
+            throws SQLException {
+        List<Review> reviews = new ArrayList<>(pageSize);
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_REVIEWS_PAGE_SQL)) {
+            statement.setString(1, isbn);
+            statement.setInt(2, afterId);
+            statement.setInt(3, pageSize);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Review review = new Review(isbn, resultSet.getInt(2), resultSet.getString(3));
+                    review.setId(resultSet.getInt(1));
+                    reviews.add(review);
+                }
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * Načte jen hodnocení knihy bez poznámek, ze serveru se nepřenáší text poznámek.
+     * @param connection připojení k databázovému serveru
+     * @param isbn ISBN knihy
+     * @return seznam hodnocení
+     * @throws SQLException SQL výjimka
+     */
+    public static List<Integer> getRatings(Connection connection, String isbn) throws SQLException {
+        return selectInts(connection, SELECT_RATINGS_SQL, isbn);
+    }
+
+    /**
+     * Provede dotaz s jedním parametrem ISBN a vrátí první sloupec výsledku jako čísla
+     */
+    private static List<Integer> selectInts(Connection connection, String sql, String isbn) throws SQLException {
+        List<Integer> values = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, isbn);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    values.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return values;
+    }
+
     /**
      * Vytvoří řetěžec všech hodnocení knihy
      * @param connection připojení k databázi
@@ -71,20 +266,35 @@ public class DatabaseMan {
             List<Review> reviews;
             try {
                 reviews = DatabaseMan.getReviews(connection, isbn);
-                StringBuilder sb = new StringBuilder();
-                for (Review review : reviews) {
-                    sb.append("Rating: ").append(review.getRating()).append("/10, ID: ")
-                            .append(review.getId()).append(" Note: ")
-                            .append(review.getNote()).append("\n");
-                }
-                return sb.toString();
+                return formatReviews(reviews);
             } catch (SQLException ex) {
-                ex.printStackTrace();
+                reportError(ex);
             }
         }
         return ""; // Pokud není zadané ISBN nebo dojde k chybě, vrátí prázdný řetězec
     }
 
+    /**
+     * Převede hodnocení na text, jedno hodnocení na řádek
+     * @param reviews hodnocení knihy
+     * @return řetězec hodnocení
+     */
+    public static String formatReviews(List<Review> reviews) {
+        StringBuilder sb = new StringBuilder();
+        for (Review review : reviews) {
+            sb.append(formatReview(review)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param review hodnocení
+     * @return hodnocení jako jeden řádek textu
+     */
+    public static String formatReview(Review review) {
+        return "Rating: " + review.getRating() + "/10, ID: " + review.getId() + " Note: " + review.getNote();
+    }
+
     /**
      * Získá IDčka všech recenzí knihy podle ISBN
      * @param connection připojení k databázi
@@ -92,18 +302,14 @@ public class DatabaseMan {
      * @return list IDček recenzí
      */
     public static List<Integer> getReviewIds(Connection connection, String isbn) {
-        List<Integer> ids = new ArrayList<>();
         if (!isbn.isEmpty()) {
             try {
-                List<Review> reviews = DatabaseMan.getReviews(connection, isbn);
-                for (Review review : reviews) {
-                    ids.add(review.getId());
-                }
+                return selectInts(connection, SELECT_REVIEW_IDS_SQL, isbn);
             } catch (SQLException ex) {
-                ex.printStackTrace();
+                reportError(ex);
             }
         }
-        return ids;
+        return new ArrayList<>();
     }
 
     /**
@@ -113,26 +319,161 @@ public class DatabaseMan {
      * @throws SQLException SQL výjimka
      */
     public static void deleteReview(Connection connection, int id) throws SQLException {
+        String isbn = null;
+        int rating = 0;
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_REVIEW_RATING_SQL)) {
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    isbn = resultSet.getString(1);
+                    rating = resultSet.getInt(2);
+                }
+            }
+        }
+        if (isbn == null) {
+            return;
+        }
+        RATING_CACHE.changing(isbn);
         try (PreparedStatement statement = connection.prepareStatement(DELETE_REVIEW_SQL)) {
             statement.setInt(1, id);
-            statement.executeUpdate();
+            if (statement.executeUpdate() > 0) {
+                RATING_CACHE.removed(isbn, rating);
+            }
+        } finally {
+            RATING_CACHE.changed(isbn);
+        }
+    }
+
+    /**
+     * Vrátí souhrn hodnocení knihy (počet, průměr, min/max, histogram). Souhrn se počítá
+     * na serveru přes GROUP BY a drží se v cache, dokud se hodnocení knihy nezmění.
+     * @param connection připojení k databázovému serveru
+     * @param isbn ISBN knihy
+     * @return souhrn hodnocení, prázdný pokud kniha žádné hodnocení nemá
+     * @throws SQLException SQL výjimka
+     */
+    public static RatingStats getRatingStats(Connection connection, String isbn) throws SQLException {
+        RatingStats cached = RATING_CACHE.get(isbn);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = RATING_CACHE.generation(isbn);
+        int[] histogram = new int[RatingStats.MAX_RATING + 1];
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_RATING_STATS_SQL)) {
+            statement.setString(1, isbn);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    addToHistogram(histogram, resultSet.getInt(1), resultSet.getInt(2));
+                }
+            }
+        }
+        RatingStats stats = new RatingStats(histogram);
+        RATING_CACHE.put(isbn, stats, generation);
+        return stats;
+    }
+
+    /**
+     * Vrátí souhrny hodnocení pro víc knih najednou, např. pro celý výpis knihovny.
+     * Knihy mimo cache se dopočítají dotazy s IN po {@value #RATING_STATS_CHUNK} ISBN, ne dotazem na každou knihu.
+     * @param connection připojení k databázovému serveru
+     * @param isbns ISBN knih
+     * @return souhrny podle ISBN, knihy bez hodnocení mají prázdný souhrn
+     * @throws SQLException SQL výjimka
+     */
+    public static Map<String, RatingStats> getRatingStats(Connection connection, Collection<String> isbns)
+            throws SQLException {
+        Map<String, RatingStats> result = new HashMap<>();
+        Map<String, Long> missing = new HashMap<>();
+        for (String isbn : isbns) {
+            RatingStats cached = RATING_CACHE.get(isbn);
+            if (cached != null) {
+                result.put(isbn, cached);
+            } else {
+                missing.put(isbn, RATING_CACHE.generation(isbn));
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Map<String, int[]> histograms = new HashMap<>();
+        List<String> pending = new ArrayList<>(missing.keySet());
+        for (int from = 0; from < pending.size(); from += RATING_STATS_CHUNK) {
+            List<String> chunk = pending.subList(from, Math.min(from + RATING_STATS_CHUNK, pending.size()));
+            int parameters = inListSize(chunk.size());
+            String placeholders = String.join(", ", Collections.nCopies(parameters, "?"));
+            try (PreparedStatement statement =
+                         connection.prepareStatement(String.format(SELECT_RATING_STATS_IN_SQL, placeholders))) {
+                // Zbylá místa se doplní posledním ISBN, opakování v IN výsledek nemění
+                for (int i = 0; i < parameters; i++) {
+                    statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        int[] histogram = histograms.computeIfAbsent(resultSet.getString(1),
+                                k -> new int[RatingStats.MAX_RATING + 1]);
+                        addToHistogram(histogram, resultSet.getInt(2), resultSet.getInt(3));
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : missing.entrySet()) {
+            String isbn = entry.getKey();
+            int[] histogram = histograms.get(isbn);
+            RatingStats stats = histogram == null ? RatingStats.EMPTY : new RatingStats(histogram);
+            RATING_CACHE.put(isbn, stats, entry.getValue());
+            result.put(isbn, stats);
+        }
+        return result;
+    }
+
+    /**
+     * Počet parametrů dotazu s IN, zaokrouhlený nahoru na jednu z pevných velikostí.
+     * Každá velikost je jiný příkaz, takže by jinak zaplnily cache příkazů v ConnectionPool.
+     * @param count počet ISBN v dávce
+     * @return počet parametrů dotazu
+     */
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (size >= count) {
+                return size;
+            }
+        }
+        return RATING_STATS_CHUNK;
+    }
+
+    /**
+     * Vyprázdní cache souhrnů hodnocení, např. když se tabulka změnila mimo DatabaseMan
+     */
+    static void clearRatingCache() {
+        RATING_CACHE.clear();
+    }
+
+    /**
+     * Vypíše chybu, kterou metoda nepředává dál, a započítá ji do metrik
+     */
+    private static void reportError(SQLException e) {
+        SQL_ERRORS.increment();
+        e.printStackTrace();
+    }
+
+    private static void addToHistogram(int[] histogram, int rating, int count) {
+        if (rating >= 0 && rating < histogram.length) {
+            histogram[rating] += count;
         }
     }
 
     /**
-     * vytvoří tabulku pro hodnocení pokuď už neexistuje
+     * vytvoří tabulku pro hodnocení pokuď už neexistuje a převede schéma na nejnovější verzi
+     * (indexy apod.), viz {@link SchemaMigrations}
      * @param connection připojení k databázi
      * @throws SQLException error u SQL
      */
     public static void createReviewsTable(Connection connection) throws SQLException {
-        if (!tableExist(connection)){
-            try (Statement statement = connection.createStatement()) {
-                statement.execute(CREATE_REVIEWS_TABLE_SQL);
-            }catch (Exception e){
-                e.printStackTrace();
-            }
+        try {
+            SchemaMigrations.migrate(connection);
+        } catch (SQLException e) {
+            reportError(e);
         }
-
     }
 
     /**
@@ -142,24 +483,11 @@ public class DatabaseMan {
      * @throws SQLException SQL error
      */
     public static boolean tableExist(Connection connection) throws SQLException {
-        boolean bookTableExists = false;
-
         try {
-            DatabaseMetaData metaData = connection.getMetaData();
-
-            ResultSet tables = metaData.getTables(null, null, null, new String[]{"TABLE"});
-
-            while (tables.next()) {
-                String tableName = tables.getString("TABLE_NAME");
-                if (tableName.equalsIgnoreCase("BookReviews")) {
-                    bookTableExists = true;
-                }
-            }
+            return SchemaMigrations.tableExists(connection, "BookReviews");
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError(e);
             throw e;
         }
-
-        return bookTableExists;
     }
 }
\ No newline at end of file
@@ -1,64 +1,431 @@
 package Library;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
 
-import static java.util.stream.Collectors.toList;
-
+/**
+ * Knihovna knih. Knihy jsou uložené ve stromu seřazeném podle názvu (a ISBN u stejných názvů)
+ * a v indexu podle ISBN, takže výpis knih nemusí nic řadit a vyhledání, označení
+ * i odstranění knihy nemusí procházet celou knihovnu.
+ * Název a ISBN knihy se po přidání do knihovny nesmí měnit, jinak by indexy nesouhlasily.
+ */
 public class Library {
-    private List<Book> books;
-    private List<String> names;
+    private static final Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Book> BOOK_ORDER = Comparator.comparing(Book::getTitle, KEY_ORDER)
+            .thenComparing(Book::getIsbn, KEY_ORDER);
+
+    private NavigableMap<String, List<Book>> booksByTitle;
+    private Map<String, List<Book>> booksByIsbn;
+    private Collection<Book> books;
+    private int size;
+    // Zvyšuje se při každé změně, podle ní autosave pozná neuložené změny
+    private long version;
+    private LibraryJournal journal;
+    private SearchIndex searchIndex;
+
+    // Každá kniha má v knihovně pozici (slot), přečtení a počet stran jsou po pozicích ve sloupcích
+    private ColumnarBookStore store;
 
     public Library() {
-        this.books = new ArrayList<>();
-        this.names = new ArrayList<>();
+        this.booksByTitle = new TreeMap<>(KEY_ORDER);
+        this.booksByIsbn = new HashMap<>();
+        this.books = Collections.unmodifiableCollection(new SortedBooks());
+        this.searchIndex = new SearchIndex();
+        this.store = new ColumnarBookStore();
+    }
+
+    /**
+     * Připojí deník, do kterého se od teď zapisují všechny změny knihovny
+     * @param journal deník změn, null deník odpojí
+     */
+    public void setJournal(LibraryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Složí deník do nového snapshotu na pozadí
+     */
+    public void compactJournal() {
+        if (journal != null) {
+            journal.compact(copyBooks());
+        }
+    }
+
+    /**
+     * Zkopíruje údaje všech knih. Kompakce ukládá až na pozadí a změny knih provedené mezitím
+     * už jsou v novém deníku, ve snapshotu musí být stav z okamžiku přepnutí deníku.
+     * @return kopie knih seřazené podle názvu
+     */
+    private List<Book> copyBooks() {
+        List<Book> copies = new ArrayList<>(size);
+        for (Book book : books) {
+            copies.add(book.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Uloží změny knihovny na disk a počká na dokončení zápisu. S připojeným deníkem stačí
+     * deník vynutit na disk, snapshot z něj složí až kompakce po nasbírání dost změn.
+     * Bez deníku se celá knihovna zapíše do library.xml.
+     * @return false pokud se knihovnu nepodařilo uložit
+     */
+    public boolean save() {
+        return prepareSave().getAsBoolean();
+    }
+
+    /**
+     * Připraví uložení, bez deníku zkopíruje knihy. Samotný zápis pak už knihovnu nečte.
+     * @return zápis na disk, vrací false pokud se nepovedl
+     */
+    BooleanSupplier prepareSave() {
+        LibraryJournal attached = journal;
+        if (attached != null) {
+            return attached::sync;
+        }
+        List<Book> snapshot = new ArrayList<>(books);
+        return () -> XmlHandler.saveLibrary(snapshot);
+    }
+
+    /**
+     * @return číslo verze, mění se s každou změnou knihovny
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void journalChanged() {
+        // Volá se uvnitř zápisu, proto přímo a ne přes přepisovatelné compactJournal()
+        if (journal.needsCompaction()) {
+            journal.compact(copyBooks());
+        }
     }
 
     public void addBook(Book book) {
-        books.add(book);
+        add(book);
     }
 
-    private void addName(String name){
-        names.add(name);
+    private void add(Book book) {
+        if (book.getLibrary() != null) {
+            // Kniha má jen jednu pozici, druhá knihovna by ji přepsala té první
+            throw new IllegalArgumentException("Book is already in a library: " + book);
+        }
+        List<Book> sameTitle = booksByTitle.computeIfAbsent(book.getTitle(), k -> new ArrayList<>(1));
+        int position = sameTitle.size();
+        while (position > 0 && KEY_ORDER.compare(sameTitle.get(position - 1).getIsbn(), book.getIsbn()) > 0) {
+            position--;
+        }
+        sameTitle.add(position, book);
+        index(booksByIsbn, book.getIsbn(), book);
+        searchIndex.add(book);
+        attach(book);
+        size++;
+        version++;
+        if (journal != null) {
+            journal.logAdd(book);
+            journalChanged();
+        }
+    }
+
+    /**
+     * Zjistí zda už knihovna obsahuje knihu se stejným ISBN a názvem
+     * @param book hledaná kniha
+     * @return true pokud kniha v knihovně je
+     */
+    public boolean containsBook(Book book) {
+        for (Book existing : booksByIsbn.getOrDefault(book.getIsbn(), List.of())) {
+            if (Objects.equals(existing.getTitle(), book.getTitle())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Najde knihy podle ISBN
+     * @param isbn ISBN knihy
+     * @return knihy s tímto ISBN, prázdný seznam pokud žádná není
+     */
+    public List<Book> findByIsbn(String isbn) {
+        return Collections.unmodifiableList(booksByIsbn.getOrDefault(isbn, List.of()));
+    }
+
+    /**
+     * Najde knihy podle názvu, knih se stejným názvem může být víc
+     * @param title název knihy
+     * @return knihy s tímto názvem, prázdný seznam pokud žádná není
+     */
+    public List<Book> findByTitle(String title) {
+        return Collections.unmodifiableList(booksByTitle.getOrDefault(title, List.of()));
     }
 
+    /**
+     * Fulltextové hledání v názvu, autorovi a žánru, bez ohledu na velikost písmen a diakritiku.
+     * Poslední slovo dotazu stačí zadat jen začátkem.
+     * @param query hledaný text
+     * @param limit maximální počet výsledků
+     * @return nalezené knihy od nejlepší shody
+     */
+    public List<Book> search(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    private static void index(Map<String, List<Book>> index, String key, Book book) {
+        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(book);
+    }
+
+    private static void unindex(Map<String, List<Book>> index, String key, Book book) {
+        List<Book> indexed = index.get(key);
+        if (indexed != null) {
+            indexed.remove(book);
+            if (indexed.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Vrátí kopii knih seřazenou podle názvu, vhodné když se s knihami pracuje mimo knihovnu
+     * (např. při ukládání na pozadí). Pro pouhý průchod je levnější {@link #getBooks()}.
+     * @return seřazená kopie všech knih
+     */
     public List<Book> getAllBooks() {
-        return books.stream()
-                .sorted(Comparator.comparing(Book::getTitle))
-                .collect(toList());
+        return new ArrayList<>(books);
+    }
+
+    /**
+     * Vrátí neměnný pohled na knihy seřazené podle názvu, nic se nekopíruje ani neřadí
+     * @return seřazený pohled na všechny knihy
+     */
+    public Collection<Book> getBooks() {
+        return books;
     }
 
+    /**
+     * Vrátí přečtené nebo nepřečtené knihy seřazené podle názvu. Knihy se berou z bitmapy
+     * přečtených knih ve sloupcovém úložišti, jen když jich je málo vzhledem k celé knihovně
+     * se vyplatí je dořadit, jinak se projde strom, který už seřazený je.
+     * @param read true pro přečtené, false pro nepřečtené knihy
+     * @return seřazené knihy
+     */
     public List<Book> getFilteredBooks(boolean read) {
-        return getAllBooks()
-                .stream()
-                .filter(book -> book.isRead() == read)
-                .toList();
+        int count = read ? store.countRead() : size - store.countRead();
+        List<Book> result = new ArrayList<>(count);
+        if (count > size / 4) {
+            for (Book book : books) {
+                if (book.isRead() == read) {
+                    result.add(book);
+                }
+            }
+            return result;
+        }
+        store.collect(read, result);
+        result.sort(BOOK_ORDER);
+        return result;
+    }
+
+    /**
+     * @return počet přečtených knih
+     */
+    public int countRead() {
+        return store.countRead();
+    }
+
+    /**
+     * @return počet nepřečtených knih
+     */
+    public int countUnread() {
+        return size - store.countRead();
+    }
+
+    /**
+     * @return součet stran všech knih
+     */
+    public long sumPages() {
+        return store.sumPages();
+    }
+
+    /**
+     * @param read true pro přečtené, false pro nepřečtené knihy
+     * @return součet stran přečtených nebo nepřečtených knih
+     */
+    public long sumPages(boolean read) {
+        return store.sumPages(read);
+    }
+
+    /**
+     * Přidělí knize volnou pozici ve sloupcovém úložišti
+     * @param book přidávaná kniha
+     */
+    private void attach(Book book) {
+        book.attach(this, store.add(book));
+    }
+
+    private void detach(Book book) {
+        store.remove(book.getSlot());
+        book.attach(null, -1);
+    }
+
+    /**
+     * Změní počet stran knihy z této knihovny, aby sloupec stran odpovídal stavu knihy
+     * @param book kniha z této knihovny
+     * @param pages nový počet stran
+     */
+    void setPages(Book book, int pages) {
+        book.updatePages(pages);
+        store.setPages(book.getSlot(), pages);
+        version++;
+    }
+
+    /**
+     * Změní přečtení knihy z této knihovny. Stav knihy i bitmapa se mění v jednom zápisu,
+     * aby je souběžné čtení nevidělo rozdílné.
+     * @param book kniha z této knihovny
+     * @param read přečtená nebo ne
+     */
+    void setRead(Book book, boolean read) {
+        book.updateRead(read);
+        if (updateReadSlot(book)) {
+            version++;
+            if (journal != null) {
+                journal.logSetRead(book);
+                journalChanged();
+            }
+        }
+    }
+
+    /**
+     * @return true pokud se stav přečtení v bitmapě změnil
+     */
+    private boolean updateReadSlot(Book book) {
+        return store.setRead(book.getSlot(), book.isRead());
     }
 
     public List<String> getNames() {
-        return names.stream()
-                .sorted()
-                .collect(toList());
+        return new ArrayList<>(booksByTitle.keySet());
+    }
+
+    public int size() {
+        return size;
     }
 
-    public void addAllBooks (List<Book> books){
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void addAllBooks (Iterable<Book> books){
         for (Book book: books) {
-            addBook(book);
-            addName(book.getTitle());
+            add(book);
         }
     }
 
-    public void markBookAsRead(String title) {
-        for (Book book : books) {
-            if (book.getTitle().equals(title)) {
-                book.markAsRead();
-                break;
+    /**
+     * Označí za přečtenou první nepřečtenou knihu s daným názvem
+     * @param title název knihy
+     * @return označená kniha, null pokud žádná nepřečtená kniha s tímto názvem není
+     */
+    public Book markBookAsRead(String title) {
+        for (Book book : booksByTitle.getOrDefault(title, List.of())) {
+            if (!book.isRead()) {
+                book.updateRead(true);
+                updateReadSlot(book);
+                version++;
+                if (journal != null) {
+                    // Zapíše se konkrétní kniha, podle názvu by obnova mohla označit jinou kopii
+                    journal.logSetRead(book);
+                    journalChanged();
+                }
+                return book;
             }
         }
+        return null;
     }
 
+    /**
+     * Odstraní všechny knihy s daným názvem
+     * @param title název knihy
+     */
     public void removeBook(String title){
-        books.removeIf(book -> book.getTitle().equals(title));
+        List<Book> removed = booksByTitle.remove(title);
+        if (removed == null) {
+            return;
+        }
+        for (Book book : removed) {
+            unindex(booksByIsbn, book.getIsbn(), book);
+            searchIndex.remove(book);
+            detach(book);
+        }
+        size -= removed.size();
+        version++;
+        if (journal != null) {
+            journal.logRemove(title);
+            journalChanged();
+        }
+    }
+
+    /**
+     * Odstraní jednu konkrétní knihu, ostatní knihy se stejným názvem zůstanou
+     * @param book kniha z této knihovny
+     */
+    public void removeBook(Book book) {
+        List<Book> sameTitle = booksByTitle.get(book.getTitle());
+        if (sameTitle == null || !sameTitle.remove(book)) {
+            return;
+        }
+        if (sameTitle.isEmpty()) {
+            booksByTitle.remove(book.getTitle());
+        }
+        unindex(booksByIsbn, book.getIsbn(), book);
+        searchIndex.remove(book);
+        detach(book);
+        size--;
+        version++;
+        if (journal != null) {
+            journal.logRemoveBook(book);
+            journalChanged();
+        }
+    }
+
+    /**
+     * Pohled na knihy v pořadí stromu podle názvu
+     */
+    private class SortedBooks extends AbstractCollection<Book> {
+        @Override
+        public Iterator<Book> iterator() {
+            Iterator<List<Book>> titles = booksByTitle.values().iterator();
+            return new Iterator<>() {
+                private Iterator<Book> current = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext() && titles.hasNext()) {
+                        current = titles.next().iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                @Override
+                public Book next() {
+                    hasNext();
+                    return current.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
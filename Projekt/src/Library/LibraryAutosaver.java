@@ -0,0 +1,109 @@
+package Library;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Průběžně ukládá knihovnu na pozadí, aby pád aplikace nepřišel o změny od posledního uložení.
+ * <p>
+ * Saver se pravidelně dívá na {@link Library#getVersion()} a ukládá jen když se od posledního
+ * uložení změnila. Série rychle po sobě jdoucích změn se uloží najednou: saver počká, až se
+ * knihovna celý interval nemění, nejdéle ale do uplynutí maximálního zpoždění od první
+ * neuložené změny. Ukládání běží na vlastním vlákně, UI ho nečeká.
+ * <p>
+ * S připojeným deníkem uložení jen vynutí deník na disk, celý katalog se přepisuje až
+ * při kompakci deníku. Uložení se počítá za úspěšné až po dokončení zápisu.
+ */
+public class LibraryAutosaver implements AutoCloseable {
+    private static final Metrics.Counter SAVES = Metrics.counter("autosave.saves");
+    private static final Metrics.Counter FAILURES = Metrics.counter("autosave.failures");
+
+    private final Library library;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+
+    // Používá jen vlákno saveru
+    private long savedVersion;
+    private long seenVersion;
+    private long dirtySince;
+
+    /**
+     * @param library ukládaná knihovna, její aktuální stav se považuje za uložený
+     * @param intervalMillis jak často se kontrolují změny
+     * @param maxDelayMillis nejdelší doba, po kterou může změna zůstat neuložená při stálých změnách
+     */
+    public LibraryAutosaver(Library library, long intervalMillis, long maxDelayMillis) {
+        this.library = library;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.savedVersion = library.getVersion();
+        this.seenVersion = savedVersion;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        long version = library.getVersion();
+        if (version == savedVersion) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (seenVersion == savedVersion) {
+            // První neuložená změna
+            dirtySince = now;
+        }
+        boolean quiet = version == seenVersion;
+        seenVersion = version;
+        if (quiet || now - dirtySince >= maxDelayNanos) {
+            save(version);
+        }
+    }
+
+    private void save(long version) {
+        try {
+            if (library.save()) {
+                savedVersion = version;
+                seenVersion = version;
+                SAVES.increment();
+            } else {
+                FAILURES.increment();
+            }
+        } catch (RuntimeException e) {
+            // Výjimka by zrušila další plánované kontroly
+            FAILURES.increment();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hned uloží neuložené změny a počká na dokončení
+     */
+    public void flush() {
+        try {
+            scheduler.submit(() -> {
+                long version = library.getVersion();
+                if (version != savedVersion) {
+                    save(version);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Uloží poslední změny a ukončí saver
+     */
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdownNow();
+    }
+}
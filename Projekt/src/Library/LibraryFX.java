@@ -1,6 +1,13 @@
 package Library;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -8,44 +15,108 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class LibraryFX extends Application {
+    private static final int SEARCH_LIMIT = 200;
+    // Hledá se až když uživatel chvíli nepíše, ne po každém znaku
+    private static final long SEARCH_DELAY_MILLIS = 150;
+    private static final long DATABASE_TIMEOUT_MILLIS = 10_000;
+    private static final int REVIEWS_PAGE_SIZE = 100;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    private static final long AUTOSAVE_INTERVAL_MILLIS = 5_000;
+    private static final long AUTOSAVE_MAX_DELAY_MILLIS = 60_000;
+    private static final Metrics.Timer DISPLAY_TIMER = Metrics.timer("ui.displayBooks");
+
     private Library library;
-    private TextArea textArea;
+    private TableView<Book> bookTable;
     private Label titleLabel;
 
-    private Connection connection;
+    // Knihy zobrazené v tabulce: všechny, z nich filtr přečtené/nepřečtené a nad tím řazení podle sloupců
+    private final ObservableList<Book> allBooks = FXCollections.observableArrayList();
+    private final FilteredList<Book> filteredBooks = new FilteredList<>(allBooks);
+    private final SortedList<Book> sortedBooks = new SortedList<>(filteredBooks);
+    // Souhrny hodnocení se načítají jen pro knihy, které má tabulka na obrazovce
+    private final Map<String, RatingStats> ratings = new HashMap<>();
+    private final Set<String> requestedRatings = new HashSet<>();
+    private List<String> pendingRatings = new ArrayList<>();
+    private boolean ratingsReady;
+
+    private static final String DATABASE_URL = "jdbc:derby://localhost:1527/libraries;create=true";
+
+    private ConnectionPool pool;
+    private ReviewService reviews;
+
+    // Hledání běží mimo UI vlákno, výsledek se ukáže jen pokud mezitím nezačalo jiné zobrazení
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long displayGeneration;
+
+    // Nastavuje ho vlákno načítající katalog
+    private volatile LibraryJournal journal;
+    private volatile LibraryAutosaver autosaver;
 
     @Override
     public void stop() throws Exception {
-        XmlHandler.saveLibrary(library.getAllBooks());
-        try{
-            connection.close();
-        }catch (Exception e){
-            System.out.println("No connection to close.");
+        Metrics.stop();
+        searchExecutor.shutdownNow();
+        if (autosaver != null) {
+            // Poslední změny se vynutí na disk ještě s připojeným deníkem
+            autosaver.close();
+        }
+        library.setJournal(null);
+        if (journal != null) {
+            journal.close();
+        }
+        if (reviews != null) {
+            reviews.close();
+        }
+        if (pool != null) {
+            pool.close();
         }
 
     }
 
     @Override
     public void start(Stage primaryStage) {
-        library = new Library();
-        List<Book> loadedBooks = XmlHandler.loadLibrary();
-        library.addAllBooks(loadedBooks);
-
-        try {
-            connection = DriverManager.getConnection("jdbc:derby://localhost:1527/libraries;create=true");
-            DatabaseMan.createReviewsTable(connection);
-        } catch (SQLException e) {
-            System.out.println("couldn't connect to database");
-        }
+        // Knihovnu plní vlákno na pozadí a zároveň ji čte UI
+        library = new ConcurrentLibrary();
+        Metrics.gauge("catalog.size", library::size);
+        Metrics.start();
+
+        pool = new ConnectionPool(DATABASE_URL, 4, 5_000, 60_000);
+        reviews = new ReviewService(pool, 2, DATABASE_TIMEOUT_MILLIS);
+        CompletableFuture<Void> databaseReady = CompletableFuture.runAsync(() -> {
+            try (Connection connection = pool.getConnection()) {
+                DatabaseMan.createReviewsTable(connection);
+            } catch (SQLException e) {
+                System.out.println("couldn't connect to database");
+            }
+        }, runnable -> startDaemon("database-connect", runnable));
 
         primaryStage.setTitle("Library");
 
@@ -85,25 +156,141 @@ public class LibraryFX extends Application {
         buttonBox.setPadding(new Insets(10));
         buttonBox.getChildren().addAll(showAllButton, showUnreadButton, showReadButton, showReviewsButton);
 
-        // Vytvoření místa pro text
-        textArea = new TextArea();
-        textArea.setEditable(false);
-        VBox.setVgrow(textArea, javafx.scene.layout.Priority.ALWAYS);
+        // Tabulka knih, buňky se vytváří jen pro viditelné řádky
+        bookTable = createBookTable();
+        VBox.setVgrow(bookTable, javafx.scene.layout.Priority.ALWAYS);
 
         // Popisek místa pro text
         titleLabel = new Label("All Books");
         titleLabel.setStyle("-fx-font-weight: bold");
 
+        // Vyhledávání při psaní
+        TextField searchField = new TextField();
+        searchField.setPromptText("Search title, author or genre");
+        PauseTransition searchDelay = new PauseTransition(Duration.millis(SEARCH_DELAY_MILLIS));
+        searchDelay.setOnFinished(e -> search(searchField.getText()));
+        searchField.textProperty().addListener((observable, oldText, newText) -> {
+            if (newText.isBlank()) {
+                searchDelay.stop();
+                displayBooks(false, false);
+            } else {
+                searchDelay.playFromStart();
+            }
+        });
+
         displayBooks(false, false);
 
+        // Ukazatel načítání, dokud se nenačte celý katalog
+        ProgressIndicator loadingIndicator = new ProgressIndicator();
+        loadingIndicator.setPrefSize(16, 16);
+        Label loadingLabel = new Label("Loading library...");
+        HBox loadingBox = new HBox(5, loadingIndicator, loadingLabel);
+
         BorderPane layout = new BorderPane();
         layout.setTop(menuBar);
-        layout.setCenter(new VBox(5, titleLabel, textArea));
+        layout.setCenter(new VBox(5, searchField, new HBox(10, titleLabel, loadingBox), bookTable));
         layout.setBottom(buttonBox);
 
         Scene scene = new Scene(layout, 700, 300);
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        // Úpravy knihovny až po načtení, jinak by se v tabulce míchaly s dávkami z načítání
+        fileMenu.setDisable(true);
+        CompletableFuture<Void> catalogLoaded = CompletableFuture.runAsync(() -> {
+            try {
+                loadCatalog(count -> Platform.runLater(() -> loadingLabel.setText("Loading library... " + count)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, runnable -> startDaemon("library-loader", runnable));
+        // Knihovna jde používat i když se katalog načíst nepodařil, chyba není chyba databáze
+        catalogLoaded.whenComplete((loaded, error) -> Platform.runLater(() -> {
+            refreshBooks();
+            fileMenu.setDisable(false);
+            loadingBox.setVisible(false);
+            loadingBox.setManaged(false);
+            if (error != null) {
+                showLoadError(error);
+            }
+        }));
+        CompletableFuture<Void> catalogSettled = catalogLoaded.exceptionally(error -> null);
+        onFxThread(CompletableFuture.allOf(catalogSettled, databaseReady), ready -> {
+            ratingsReady = true;
+            bookTable.refresh();
+        });
+    }
+
+    /**
+     * Načte katalog a deník změn, běží mimo UI vlákno. Knihy se do tabulky posílají po dávkách,
+     * takže se objevují postupně a UI vlákno nezahltí jedno volání na každou knihu.
+     * Když katalog nejde přečíst, nepřipojí se deník ani autosave, aby kompakce nepřepsala
+     * nečitelný katalog jen částečně načtenou knihovnou.
+     * @param progress dostává počet dosud načtených knih
+     * @throws IOException katalog nejde přečíst
+     */
+    private void loadCatalog(Consumer<Integer> progress) throws IOException {
+        BatchLoader loader = new BatchLoader(progress);
+        long snapshotSequence;
+        try {
+            snapshotSequence = XmlHandler.loadLibraryParallel(loader);
+        } finally {
+            loader.flush();
+        }
+
+        LibraryJournal loadedJournal = new LibraryJournal();
+        int replayed = 0;
+        try {
+            replayed = loadedJournal.replay(library, snapshotSequence);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        library.setJournal(loadedJournal);
+        journal = loadedJournal;
+        if (replayed > 0) {
+            library.compactJournal();
+        }
+        // Až po načtení, jinak by se ukládala rozpracovaná knihovna
+        autosaver = new LibraryAutosaver(library, AUTOSAVE_INTERVAL_MILLIS, AUTOSAVE_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Sbírá načtené knihy do dávek a každou dávku přidá do knihovny i do tabulky
+     */
+    private class BatchLoader implements Consumer<Book> {
+        private final Consumer<Integer> progress;
+        private List<Book> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        private int loaded;
+
+        BatchLoader(Consumer<Integer> progress) {
+            this.progress = progress;
+        }
+
+        @Override
+        public void accept(Book book) {
+            batch.add(book);
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                flush();
+                progress.accept(loaded);
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Book> pushed = batch;
+            batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            loaded += pushed.size();
+            library.addAllBooks(pushed);
+            Platform.runLater(() -> allBooks.addAll(pushed));
+        }
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -164,33 +351,180 @@ public class LibraryFX extends Application {
 
         dialog.showAndWait().ifPresent(book -> {
             library.addBook(book);
+            allBooks.add(book);
             displayBooks(false, true);
         });
     }
 
     /**
-     * Zobrazí knihy podle vstupů
+     * Vytvoří tabulku knih s řaditelnými sloupci
+     * @return tabulka napojená na seřazený pohled knih
+     */
+    private TableView<Book> createBookTable() {
+        TableView<Book> table = new TableView<>();
+        table.setPlaceholder(new Label("No books"));
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+
+        TableColumn<Book, String> titleColumn = new TableColumn<>("Title");
+        titleColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getTitle()));
+        TableColumn<Book, String> authorColumn = new TableColumn<>("Author");
+        authorColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getAuthor()));
+        TableColumn<Book, String> genreColumn = new TableColumn<>("Genre");
+        genreColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getGenre()));
+        TableColumn<Book, Integer> pagesColumn = new TableColumn<>("Pages");
+        pagesColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPages()));
+        TableColumn<Book, String> isbnColumn = new TableColumn<>("ISBN");
+        isbnColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getIsbn()));
+        TableColumn<Book, Boolean> readColumn = new TableColumn<>("Read");
+        readColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().isRead()));
+        readColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(Boolean read, boolean empty) {
+                super.updateItem(read, empty);
+                setText(empty || read == null ? null : read ? "Yes" : "No");
+            }
+        });
+
+        TableColumn<Book, RatingStats> ratingColumn = new TableColumn<>("Rating");
+        ratingColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(ratings.get(cell.getValue().getIsbn())));
+        ratingColumn.setComparator(Comparator.nullsFirst(Comparator.comparingDouble(RatingStats::getMean)));
+        ratingColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(RatingStats stats, boolean empty) {
+                super.updateItem(stats, empty);
+                setText(empty || stats == null || stats.getCount() == 0 ? null : stats.toString());
+                Book book = empty || getTableRow() == null ? null : getTableRow().getItem();
+                if (stats == null && book != null) {
+                    requestRating(book.getIsbn());
+                }
+            }
+        });
+
+        table.getColumns().addAll(List.of(titleColumn, authorColumn, genreColumn, pagesColumn, isbnColumn,
+                readColumn, ratingColumn));
+        sortedBooks.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sortedBooks);
+        return table;
+    }
+
+    /**
+     * Načte do tabulky celý obsah knihovny, po jednotlivých změnách se upravují jen dotčené řádky
+     */
+    private void refreshBooks() {
+        allBooks.setAll(library.getBooks());
+    }
+
+    /**
+     * Oznámí tabulce změnu jedné knihy, filtr a řazení ji přepočítají bez načítání ostatních řádků
+     * @param book změněná kniha
+     */
+    private void updateRow(Book book) {
+        int index = allBooks.indexOf(book);
+        if (index >= 0) {
+            allBooks.set(index, book);
+        }
+    }
+
+    /**
+     * Zobrazí knihy podle vstupů, přepíná jen filtr nad už načtenými knihami
      * @param filtered jestli se bude filtrovat(false vypíše všechny knihy)
      * @param read jestli filtrované knihy jsou přečtené nebo ne
      */
     private void displayBooks(boolean filtered, boolean read) {
-        List<Book> booksToDisplay;
-        String title;
-
+        long start = DISPLAY_TIMER.start();
+        displayGeneration++;
         if (filtered) {
-            booksToDisplay = library.getFilteredBooks(read);
-            title = read ? "Read Books" : "Unread Books";
+            filteredBooks.setPredicate(book -> book.isRead() == read);
+            titleLabel.setText((read ? "Read Books" : "Unread Books") + pagesSuffix(library.sumPages(read)));
         } else {
-            booksToDisplay = library.getAllBooks();
-            title = "All Books";
+            filteredBooks.setPredicate(null);
+            titleLabel.setText("All Books" + pagesSuffix(library.sumPages()));
         }
+        bookTable.setItems(sortedBooks);
+        DISPLAY_TIMER.stop(start);
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (Book book : booksToDisplay) {
-            sb.append(book.toString()).append("\n");
-        }
-        textArea.setText(sb.toString());
+    private static String pagesSuffix(long pages) {
+        return " (" + pages + " pages)";
+    }
+
+    /**
+     * Vyhledá knihy na pozadí a zobrazí je, pokud mezitím nezačalo jiné hledání nebo zobrazení
+     * @param query hledaný text
+     */
+    private void search(String query) {
+        long generation = ++displayGeneration;
+        CompletableFuture.supplyAsync(() -> library.search(query, SEARCH_LIMIT), searchExecutor)
+                .whenComplete((found, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        error.printStackTrace();
+                    } else if (generation == displayGeneration) {
+                        showBooks(found, "Search Results");
+                    }
+                }));
+    }
+
+    /**
+     * Zobrazí v tabulce vybrané knihy, např. výsledky vyhledávání
+     * @param booksToDisplay knihy k zobrazení
+     * @param title popisek nad tabulkou
+     */
+    private void showBooks(Collection<Book> booksToDisplay, String title) {
+        long start = DISPLAY_TIMER.start();
+        bookTable.setItems(FXCollections.observableArrayList(booksToDisplay));
         titleLabel.setText(title);
+        DISPLAY_TIMER.stop(start);
+    }
+
+    /**
+     * Zařadí knihu k načtení hodnocení, volají ho buňky viditelných řádků. Požadavky
+     * z jednoho vykreslení tabulky se pošlou databázi jedním dotazem.
+     * @param isbn ISBN knihy bez načteného hodnocení
+     */
+    private void requestRating(String isbn) {
+        if (!ratingsReady || !requestedRatings.add(isbn)) {
+            return;
+        }
+        pendingRatings.add(isbn);
+        if (pendingRatings.size() == 1) {
+            Platform.runLater(this::loadRatings);
+        }
+    }
+
+    /**
+     * Na pozadí načte souhrny hodnocení zařazených knih, tabulka je doplní až odpoví databáze
+     */
+    private void loadRatings() {
+        List<String> isbns = pendingRatings;
+        pendingRatings = new ArrayList<>();
+        CompletableFuture<Map<String, RatingStats>> stats = reviews.getRatingStats(isbns)
+                .exceptionally(e -> {
+                    // Bez databáze se knihy ukáží jen bez hodnocení
+                    e.printStackTrace();
+                    return Map.of();
+                });
+        onFxThread(stats, loaded -> {
+            if (!loaded.isEmpty()) {
+                ratings.putAll(loaded);
+                bookTable.refresh();
+            }
+        });
+    }
+
+    /**
+     * Po přidání nebo smazání hodnocení znovu načte souhrn jedné knihy,
+     * DatabaseMan ho má po změně v cache, takže se databáze znovu neptá
+     * @param isbn ISBN knihy, jejíž hodnocení se změnilo
+     */
+    private void reloadRating(String isbn) {
+        if (!ratingsReady) {
+            return;
+        }
+        requestedRatings.add(isbn);
+        onFxThread(reviews.getRatingStats(List.of(isbn)), loaded -> {
+            ratings.putAll(loaded);
+            bookTable.refresh();
+        });
     }
 
     /**
@@ -215,7 +549,10 @@ public class LibraryFX extends Application {
         Optional<String> result = dialog.showAndWait();
         result.ifPresent(name -> {
             boolean wantsReview = showConfirmationDialog("Leave a review", "Do you want to leave a review for this book?");
-            library.markBookAsRead(name);
+            Book marked = library.markBookAsRead(name);
+            if (marked != null) {
+                updateRow(marked);
+            }
             displayBooks(true, false);
             if (wantsReview) {
                 showAddReviewDialog(name);
@@ -227,10 +564,9 @@ public class LibraryFX extends Application {
      * Ukáže dialog pro odstranění knihy, vybere se kniha podle názvu a je vymazána
      */
     private void showRemoveBookDialog() {
-        List<Book> books = library.getAllBooks();
         List<String> names = library.getNames();
 
-        if (books.isEmpty()) {
+        if (library.isEmpty()) {
             showAlert("No books", "There are no books in the library.");
             return;
         }
@@ -241,12 +577,48 @@ public class LibraryFX extends Application {
         dialog.setContentText("Book:");
 
         Optional<String> result = dialog.showAndWait();
-        result.ifPresent(name -> {
-            library.removeBook(name);
+        result.flatMap(this::chooseCopy).ifPresent(book -> {
+            library.removeBook(book);
+            allBooks.remove(book);
             displayBooks(false, false);
         });
     }
 
+    /**
+     * U názvu s více knihami nechá vybrat, kterou kopii odstranit
+     * @param title název knihy
+     * @return vybraná kniha, prázdné pokud uživatel výběr zrušil
+     */
+    private Optional<Book> chooseCopy(String title) {
+        List<Book> copies = library.findByTitle(title);
+        if (copies.size() <= 1) {
+            return copies.stream().findFirst();
+        }
+        ChoiceDialog<Book> dialog = new ChoiceDialog<>(copies.get(0), copies);
+        dialog.setTitle("Remove Book");
+        dialog.setHeaderText("There are " + copies.size() + " books titled " + title + ", select one:");
+        dialog.setContentText("Book:");
+        return dialog.showAndWait();
+    }
+
+    /**
+     * Ukáže chybu načtení katalogu, tabulka obsahuje jen knihy načtené před chybou
+     * @param error chyba z načítání
+     */
+    private void showLoadError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UncheckedIOException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        cause.printStackTrace();
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Library error");
+        alert.setHeaderText("Cannot load " + LibraryFiles.catalog().toAbsolutePath());
+        alert.setContentText(cause.getMessage() + "\n\nOnly the books read before the error are shown. "
+                + "Changes will not be saved, so that the file is not overwritten.");
+        alert.showAndWait();
+    }
+
     /**
      * Upozornění
      * @param title nadpis pro upozornění
@@ -265,14 +637,13 @@ public class LibraryFX extends Application {
      * Dialog pro přidání recenze ke knize
      */
     private void showAddReviewDialog(String title) {
-        List<Book> books = library.getAllBooks();
         List<String> titles;
         String selectedTitle;
         if(title != null){
             selectedTitle = title;
         }else{
             titles = library.getNames();
-            if (books.isEmpty()) {
+            if (library.isEmpty()) {
                 showAlert("No books", "There are no books in the library.");
                 return;
             }
@@ -288,8 +659,8 @@ public class LibraryFX extends Application {
         }
 
         String finalTitle = selectedTitle;
-        String selectedIsbn = books.stream()
-                .filter(book -> book.getTitle().equals(finalTitle))
+        String selectedIsbn = library.findByTitle(finalTitle)
+                .stream()
                 .map(Book::getIsbn)
                 .findFirst()
                 .orElse(null);
@@ -333,13 +704,31 @@ public class LibraryFX extends Application {
             return null;
         });
 
-        dialog.showAndWait().ifPresent(review -> {
-            try {
-                DatabaseMan.saveReview(connection, review.getIsbn(), review.getRating(), review.getNote());
-            } catch (SQLException e) {
-                e.printStackTrace();
+        dialog.showAndWait().ifPresent(review ->
+                onFxThread(reviews.saveReview(review.getIsbn(), review.getRating(), review.getNote()),
+                        saved -> reloadRating(review.getIsbn())));
+    }
+
+    /**
+     * Předá výsledek databázové operace na UI vlákno, chybu ukáže uživateli
+     * @param future běžící operace
+     * @param action co udělat s výsledkem na UI vlákně
+     * @param <T> typ výsledku
+     */
+    private <T> void onFxThread(CompletableFuture<T> future, Consumer<T> action) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                action.accept(result);
+                return;
             }
-        });
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            cause.printStackTrace();
+            showAlert("Database error", cause instanceof TimeoutException
+                    ? "The database did not respond in time." : "Database operation failed: " + cause.getMessage());
+        }));
     }
 
     /**
@@ -359,7 +748,8 @@ public class LibraryFX extends Application {
     }
 
     /**
-     * Vyvolá okno pro zobrazování recenzí
+     * Vyvolá okno pro zobrazování recenzí. Recenze se načítají po stránkách, další stránka
+     * až na požádání, takže i kniha s tisíci recenzí se ukáže hned.
      */
     private void showReviewsStage() {
         Stage reviewsStage = new Stage();
@@ -371,47 +761,98 @@ public class LibraryFX extends Application {
         TextField isbnField = new TextField();
         isbnField.setPromptText("Enter ISBN");
 
-        TextArea reviewsArea = new TextArea();
-        reviewsArea.setEditable(false);
+        ListView<Review> reviewsList = new ListView<>();
+        reviewsList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(Review review, boolean empty) {
+                super.updateItem(review, empty);
+                setText(empty || review == null ? null : DatabaseMan.formatReview(review));
+            }
+        });
+        VBox.setVgrow(reviewsList, javafx.scene.layout.Priority.ALWAYS);
+
+        Button loadMoreButton = new Button("Load More");
+        loadMoreButton.setDisable(true);
+        ReviewPages pages = new ReviewPages(reviewsList, loadMoreButton);
+        reviewsStage.setOnHidden(e -> pages.cancel());
 
         Button showReviewsButton = new Button("Show Reviews");
-        showReviewsButton.setOnAction(e -> {
-            String isbn = isbnField.getText();
-            String reviewsString = DatabaseMan.createReviewsString(connection, isbn);
-            reviewsArea.setText(reviewsString);
-        });
+        showReviewsButton.setOnAction(e -> pages.open(isbnField.getText()));
+        loadMoreButton.setOnAction(e -> pages.loadNext());
+
         Button deleteReviewButton = new Button("Delete Review");
+        deleteReviewButton.disableProperty().bind(reviewsList.getSelectionModel().selectedItemProperty().isNull());
         deleteReviewButton.setOnAction(e -> {
-            String isbn = isbnField.getText();
-            List<Integer> reviewIds = DatabaseMan.getReviewIds(connection, isbn);
-
-            if (!reviewIds.isEmpty()) {
-                ChoiceDialog<Integer> choiceDialog = new ChoiceDialog<>(reviewIds.get(0), reviewIds);
-                choiceDialog.setTitle("Select Review to Delete");
-                choiceDialog.setHeaderText("Please select a review you wish to delete:");
-
-                Optional<Integer> result = choiceDialog.showAndWait();
-                result.ifPresent(reviewId -> {
-                    try {
-                        DatabaseMan.deleteReview(connection, reviewId);
-                        String reviewsString = DatabaseMan.createReviewsString(connection, isbn);
-                        reviewsArea.setText(reviewsString);
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
+            Review selected = reviewsList.getSelectionModel().getSelectedItem();
+            if (selected != null && showConfirmationDialog("Delete Review",
+                    "Do you want to delete review " + selected.getId() + "?")) {
+                onFxThread(reviews.deleteReview(selected.getId()), deleted -> {
+                    reviewsList.getItems().remove(selected);
+                    reloadRating(selected.getIsbn());
                 });
             }
         });
         HBox buttonLayout = new HBox(10);
-        buttonLayout.getChildren().addAll(showReviewsButton, deleteReviewButton);
+        buttonLayout.getChildren().addAll(showReviewsButton, deleteReviewButton, loadMoreButton);
 
-        layout.getChildren().addAll(isbnField, buttonLayout, reviewsArea);
+        layout.getChildren().addAll(isbnField, buttonLayout, reviewsList);
         Scene scene = new Scene(layout, 500, 300);
         reviewsStage.setScene(scene);
         reviewsStage.show();
     }
 
+    /**
+     * Stránkované načítání recenzí jedné knihy do seznamu v okně recenzí
+     */
+    private class ReviewPages {
+        private final ListView<Review> list;
+        private final Button loadMoreButton;
+        private String isbn = "";
+        private int lastId;
+        private CompletableFuture<List<Review>> pending;
+
+        ReviewPages(ListView<Review> list, Button loadMoreButton) {
+            this.list = list;
+            this.loadMoreButton = loadMoreButton;
+        }
 
+        /**
+         * Začne zobrazovat recenze jiné knihy od první stránky
+         */
+        void open(String isbn) {
+            cancel();
+            this.isbn = isbn;
+            lastId = 0;
+            list.getItems().clear();
+            if (!isbn.isEmpty()) {
+                loadNext();
+            }
+        }
+
+        void loadNext() {
+            loadMoreButton.setDisable(true);
+            CompletableFuture<List<Review>> page = reviews.getReviewsPage(isbn, lastId, REVIEWS_PAGE_SIZE);
+            pending = page;
+            onFxThread(page, loaded -> {
+                if (page != pending) {
+                    return;
+                }
+                pending = null;
+                list.getItems().addAll(loaded);
+                if (!loaded.isEmpty()) {
+                    lastId = loaded.get(loaded.size() - 1).getId();
+                }
+                loadMoreButton.setDisable(loaded.size() < REVIEWS_PAGE_SIZE);
+            });
+        }
+
+        void cancel() {
+            if (pending != null) {
+                pending.cancel(true);
+                pending = null;
+            }
+        }
+    }
 
     public static void main(String[] args) {
         launch(args);
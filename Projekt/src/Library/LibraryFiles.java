@@ -0,0 +1,65 @@
+package Library;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Umístění a formát souborů knihovny.
+ * <p>
+ * Ve výchozím stavu jsou všechny soubory v pracovním adresáři a katalog se ukládá jako
+ * nekomprimované XML. Nastavuje se vlastnostmi:
+ * <ul>
+ *     <li>{@code -Dlibrary.dir=adresář} adresář pro katalog, deník i binární snapshot</li>
+ *     <li>{@code -Dlibrary.file=soubor} katalog, relativní cesta se bere vůči library.dir</li>
+ *     <li>{@code -Dlibrary.compress=true} katalog se ukládá komprimovaný GZIPem, při načítání
+ *     se komprese pozná sama, takže se dá přepínat i u existujícího souboru</li>
+ * </ul>
+ */
+public class LibraryFiles {
+    private static final String CATALOG_NAME = "library.xml";
+    private static final String JOURNAL_NAME = "library.journal";
+    private static final String COMPACTING_JOURNAL_NAME = "library.journal.old";
+    private static final String SNAPSHOT_NAME = "library.bin";
+
+    /**
+     * @return adresář souborů knihovny
+     */
+    public static Path directory() {
+        return Paths.get(System.getProperty("library.dir", "."));
+    }
+
+    /**
+     * @return soubor s XML katalogem
+     */
+    public static Path catalog() {
+        return directory().resolve(System.getProperty("library.file", CATALOG_NAME));
+    }
+
+    /**
+     * @return deník změn
+     */
+    public static Path journal() {
+        return directory().resolve(JOURNAL_NAME);
+    }
+
+    /**
+     * @return deník čekající na kompakci
+     */
+    public static Path compactingJournal() {
+        return directory().resolve(COMPACTING_JOURNAL_NAME);
+    }
+
+    /**
+     * @return binární snapshot
+     */
+    public static Path binarySnapshot() {
+        return directory().resolve(SNAPSHOT_NAME);
+    }
+
+    /**
+     * @return true pokud se má katalog ukládat komprimovaný
+     */
+    public static boolean compressCatalog() {
+        return Boolean.getBoolean("library.compress");
+    }
+}
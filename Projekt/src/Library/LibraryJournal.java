@@ -0,0 +1,378 @@
+package Library;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deník změn knihovny. Místo přepisování celého XML se každá změna připíše na konec souboru,
+ * při startu se deník přehraje nad posledním snapshotem (library.xml) a po nasbírání
+ * dostatku změn se na pozadí složí do nového snapshotu.
+ * <p>
+ * Každý záznam má pořadové číslo a snapshot si pamatuje číslo posledního záznamu, který
+ * obsahuje. Záznamy, které snapshot už obsahuje (pád po uložení snapshotu, ale před
+ * smazáním starého deníku), se při přehrání přeskočí, takže se žádná změna neprovede dvakrát.
+ */
+public class LibraryJournal implements Closeable {
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    private static final byte ADD = 'A';
+    private static final byte REMOVE = 'D';
+    private static final byte REMOVE_BOOK = 'X';
+    private static final byte SET_READ = 'S';
+
+    private final File file;
+    private final File compactingFile;
+    private final int compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileOutputStream outputFile;
+    private DataOutputStream output;
+    private int records;
+    // Číslo posledního zapsaného záznamu
+    private long sequence;
+    private int pendingCompactions;
+
+    public LibraryJournal() {
+        this(LibraryFiles.journal().toFile(), LibraryFiles.compactingJournal().toFile(), DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public LibraryJournal(File file, File compactingFile, int compactionThreshold) {
+        this.file = file;
+        this.compactingFile = compactingFile;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Přehraje deník nad knihovnou načtenou ze snapshotu. Volá se před {@link Library#setJournal},
+     * aby se přehrané změny znovu nezapsaly. Poškozený konec deníku (pád během zápisu) se zahodí.
+     * @param library knihovna načtená z posledního snapshotu
+     * @param snapshotSequence číslo posledního záznamu, který snapshot obsahuje,
+     *                         viz {@link XmlHandler#loadLibraryParallel(java.util.function.Consumer)}
+     * @return počet přehraných změn
+     * @throws IOException chyba při čtení deníku
+     */
+    public synchronized int replay(Library library, long snapshotSequence) throws IOException {
+        int replayed = 0;
+        sequence = snapshotSequence;
+        if (compactingFile.exists()) {
+            // Předchozí kompakce nedoběhla, změny z ní ještě nemusí být ve snapshotu
+            replayed += replayFile(compactingFile, library, snapshotSequence);
+        }
+        replayed += replayFile(file, library, snapshotSequence);
+        records = replayed;
+        return replayed;
+    }
+
+    private int replayFile(File source, Library library, long snapshotSequence) throws IOException {
+        if (!source.exists()) {
+            return 0;
+        }
+        int replayed = 0;
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+            while (true) {
+                int op = input.read();
+                if (op == -1) {
+                    break;
+                }
+                long recordSequence = input.readLong();
+                // Záznam se musí přečíst celý i když ho snapshot už obsahuje
+                boolean apply = recordSequence > snapshotSequence;
+                switch (op) {
+                    case ADD -> {
+                        Book book = readBook(input);
+                        if (apply) {
+                            library.addBook(book);
+                        }
+                    }
+                    case REMOVE -> {
+                        String title = readString(input);
+                        if (apply) {
+                            library.removeBook(title);
+                        }
+                    }
+                    case REMOVE_BOOK -> {
+                        Book book = readBook(input);
+                        if (apply) {
+                            removeCopy(library, book);
+                        }
+                    }
+                    case SET_READ -> {
+                        Book book = readBook(input);
+                        if (apply) {
+                            setRead(library, book);
+                        }
+                    }
+                    default -> throw new EOFException("Unknown journal record " + op);
+                }
+                sequence = Math.max(sequence, recordSequence);
+                if (apply) {
+                    replayed++;
+                }
+                validLength = source.length() - input.available();
+            }
+        } catch (EOFException e) {
+            System.out.println("Journal " + source + " has a damaged tail, it will be truncated");
+        }
+        if (validLength < source.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Zapíše přidání knihy
+     * @param book přidaná kniha
+     */
+    public synchronized void logAdd(Book book) {
+        try {
+            DataOutputStream out = begin(ADD);
+            writeBook(out, book);
+            commit(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Zapíše odstranění jedné knihy, kniha se zapisuje celá, aby se při obnově odstranila
+     * stejná kopie i mezi knihami se stejným názvem
+     */
+    public synchronized void logRemoveBook(Book book) {
+        try {
+            DataOutputStream out = begin(REMOVE_BOOK);
+            writeBook(out, book);
+            commit(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Zapíše změnu přečtení jedné knihy, kniha se zapisuje celá i s novým stavem
+     */
+    public synchronized void logSetRead(Book book) {
+        try {
+            DataOutputStream out = begin(SET_READ);
+            writeBook(out, book);
+            commit(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Odstraní z knihovny kopii, která se shoduje se zapsanou knihou ve všech údajích
+     */
+    private static void removeCopy(Library library, Book removed) {
+        Book copy = findCopy(library, removed, removed.isRead());
+        if (copy != null) {
+            library.removeBook(copy);
+        }
+    }
+
+    /**
+     * Nastaví zapsaný stav přečtení kopii, která ho ještě nemá
+     */
+    private static void setRead(Library library, Book changed) {
+        Book copy = findCopy(library, changed, !changed.isRead());
+        if (copy != null) {
+            copy.setRead(changed.isRead());
+        }
+    }
+
+    private static Book findCopy(Library library, Book logged, boolean read) {
+        for (Book book : library.findByTitle(logged.getTitle())) {
+            if (Objects.equals(book.getIsbn(), logged.getIsbn())
+                    && Objects.equals(book.getAuthor(), logged.getAuthor())
+                    && Objects.equals(book.getGenre(), logged.getGenre())
+                    && book.getPages() == logged.getPages()
+                    && book.isRead() == read) {
+                return book;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Zapíše odstranění knihy
+     * @param title název knihy
+     */
+    public synchronized void logRemove(String title) {
+        logTitle(REMOVE, title);
+    }
+
+    private void logTitle(byte op, String title) {
+        try {
+            DataOutputStream out = begin(op);
+            writeString(out, title);
+            commit(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private DataOutputStream begin(byte op) throws IOException {
+        DataOutputStream out = output();
+        out.writeByte(op);
+        out.writeLong(++sequence);
+        return out;
+    }
+
+    private void commit(DataOutputStream out) throws IOException {
+        out.flush();
+        records++;
+    }
+
+    /**
+     * Vynutí zapsané změny na disk, po návratu přežijí i pád systému. Změny z už přepnutého
+     * deníku zapíše na disk kompakce spolu se snapshotem.
+     * @return false pokud se deník nepodařilo zapsat
+     */
+    public synchronized boolean sync() {
+        if (output == null) {
+            return true;
+        }
+        try {
+            output.flush();
+            outputFile.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return true pokud je v deníku tolik změn, že se vyplatí ho složit do snapshotu
+     */
+    public synchronized boolean needsCompaction() {
+        return records >= compactionThreshold;
+    }
+
+    /**
+     * Složí deník do nového snapshotu. Deník se hned přepne na nový soubor,
+     * samotný zápis snapshotu pak běží na pozadí.
+     * @param books kopie údajů knih v okamžiku volání, se kterou už nikdo jiný nepracuje
+     */
+    public synchronized void compact(List<Book> books) {
+        long covered = sequence;
+        try {
+            closeOutput();
+            if (compactingFile.exists()) {
+                // Starší kompakce ještě nedoběhla, nové změny se přidají k ní
+                appendTo(file, compactingFile);
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("Cannot delete " + file);
+                }
+            } else if (file.exists()) {
+                Files.move(file.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            records = 0;
+            pendingCompactions++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        compactor.execute(() -> {
+            boolean saved = XmlHandler.saveLibrary(books, covered);
+            synchronized (this) {
+                // Soubor smí zmizet až když ho pokrývá i snapshot poslední kompakce,
+                // po neúspěšném uložení zůstane a přidá se k němu další kompakce,
+                // a když se nic nepřepnulo, není co mazat
+                if (--pendingCompactions == 0 && saved && compactingFile.exists() && !compactingFile.delete()) {
+                    System.out.println("Cannot delete " + compactingFile);
+                }
+            }
+        });
+    }
+
+    private static void appendTo(File source, File target) throws IOException {
+        if (!source.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(target, true)) {
+            in.transferTo(out);
+        }
+    }
+
+    /**
+     * Počká na doběhnutí kompakce a zavře deník
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                closeOutput();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private DataOutputStream output() throws IOException {
+        if (output == null) {
+            outputFile = new FileOutputStream(file, true);
+            output = new DataOutputStream(new BufferedOutputStream(outputFile));
+        }
+        return output;
+    }
+
+    private void closeOutput() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+            outputFile = null;
+        }
+    }
+
+    private static void writeBook(DataOutputStream out, Book book) throws IOException {
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getGenre());
+        out.writeInt(book.getPages());
+        writeString(out, book.getIsbn());
+        out.writeBoolean(book.isRead());
+    }
+
+    private static Book readBook(DataInputStream in) throws IOException {
+        String title = readString(in);
+        String author = readString(in);
+        String genre = readString(in);
+        int pages = in.readInt();
+        String isbn = readString(in);
+        Book book = new Book(title, author, genre, pages, isbn);
+        book.setRead(in.readBoolean());
+        return book;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,337 @@
+package Library;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Jednoduché metriky aplikace: časovače s histogramem, čítače a měřidla (gauge).
+ * <p>
+ * Sběr je ve výchozím stavu vypnutý a vypnuté metriky stojí jen čtení jednoho volatile
+ * příznaku. Zapíná se vlastností {@code -Dlibrary.metrics=true} nebo přes JMX
+ * (atribut Enabled objektu {@code Library:type=Metrics}), s {@code -Dlibrary.metrics.file=cesta}
+ * se navíc každou minutu zapisuje přehled do souboru.
+ * <p>
+ * Časovač se používá takto:
+ * <pre>
+ * long start = TIMER.start();
+ * ...
+ * TIMER.stop(start);
+ * </pre>
+ */
+public class Metrics {
+    private static final String OBJECT_NAME = "Library:type=Metrics";
+    private static final long DUMP_PERIOD_SECONDS = 60;
+
+    private static volatile boolean enabled = Boolean.getBoolean("library.metrics");
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService dumper;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * @param name název časovače, např. "xml.load"
+     * @return časovač, pro stejný název vždy stejný
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * @param name název čítače, např. "books.loaded"
+     * @return čítač, pro stejný název vždy stejný
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Zaregistruje měřidlo, hodnota se zjistí až při čtení metrik
+     * @param name název měřidla, např. "catalog.size"
+     * @param value zdroj hodnoty
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * @return aktuální hodnoty všech metrik seřazené podle názvu
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.get()));
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        TIMERS.forEach((name, timer) -> {
+            values.put(name + ".count", timer.getCount());
+            values.put(name + ".meanMillis", timer.getMeanMillis());
+            values.put(name + ".maxMillis", timer.getMaxMillis());
+            values.put(name + ".p50Millis", timer.getPercentileMillis(0.5));
+            values.put(name + ".p99Millis", timer.getPercentileMillis(0.99));
+        });
+        return values;
+    }
+
+    /**
+     * Zpřístupní metriky přes JMX a podle vlastnosti library.metrics.file spustí zápis do souboru
+     */
+    public static synchronized void start() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        String file = System.getProperty("library.metrics.file");
+        if (file != null && dumper == null) {
+            Path path = Paths.get(file);
+            dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(() -> dump(path), DUMP_PERIOD_SECONDS, DUMP_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Zapíše aktuální hodnoty metrik do souboru, jedna metrika na řádek "název=hodnota"
+     * @param path cílový soubor, přepíše se celý
+     */
+    public static void dump(Path path) {
+        if (!enabled) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        snapshot().forEach((name, value) -> lines.add(name + "=" + value));
+        try {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ukončí zápis metrik do souboru, poslední stav se ještě zapíše
+     */
+    public static synchronized void stop() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+            String file = System.getProperty("library.metrics.file");
+            if (file != null) {
+                dump(Paths.get(file));
+            }
+        }
+    }
+
+    /**
+     * Čítač událostí, při vypnutých metrikách nic nepočítá
+     */
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        public void add(long value) {
+            if (enabled) {
+                count.add(value);
+            }
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Časovač s histogramem po mocninách dvou (v mikrosekundách), percentily jsou proto jen
+     * přibližné, ale záznam nic nealokuje a nezamyká.
+     */
+    public static class Timer {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        /**
+         * @return začátek měření, 0 pokud jsou metriky vypnuté
+         */
+        public long start() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Zaznamená dobu od {@link #start()}, při vypnutých metrikách nic nedělá
+         * @param start hodnota vrácená z start()
+         */
+        public void stop(long start) {
+            if (start != 0) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000.0;
+        }
+
+        /**
+         * @param quantile požadovaný percentil mezi 0 a 1
+         * @return horní hranice koše histogramu, do kterého percentil padne, nejvýš maximum
+         */
+        public double getPercentileMillis(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank && seen > 0) {
+                    return Math.min((1L << i) / 1000.0, getMaxMillis());
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * JMX pohled na metriky, každá hodnota ze {@link #snapshot()} je jeden atribut
+     */
+    private static class MetricsMBean implements DynamicMBean {
+        private static final String ENABLED = "Enabled";
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals(ENABLED)) {
+                return enabled;
+            }
+            Object value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute)
+                throws AttributeNotFoundException, InvalidAttributeValueException {
+            if (!attribute.getName().equals(ENABLED)) {
+                throw new AttributeNotFoundException(attribute.getName());
+            }
+            if (!(attribute.getValue() instanceof Boolean)) {
+                throw new InvalidAttributeValueException(ENABLED + " must be a boolean: " + attribute.getValue());
+            }
+            enabled = (Boolean) attribute.getValue();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            Map<String, Object> values = snapshot();
+            for (String attribute : attributes) {
+                if (attribute.equals(ENABLED)) {
+                    list.add(new Attribute(ENABLED, enabled));
+                } else if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            AttributeList set = new AttributeList();
+            for (Attribute attribute : attributes.asList()) {
+                try {
+                    setAttribute(attribute);
+                    set.add(attribute);
+                } catch (AttributeNotFoundException | InvalidAttributeValueException e) {
+                    // Ostatní atributy jsou jen pro čtení, nenastavené se nevrátí
+                }
+            }
+            return set;
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            // MBean nemá žádné operace
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            attributes.add(new MBeanAttributeInfo(ENABLED, "boolean", "Metrics collection enabled",
+                    true, true, true));
+            snapshot().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(name,
+                    value instanceof Double ? "double" : "long", name, true, false, false)));
+            return new MBeanInfo(Metrics.class.getName(), "Library metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+        }
+    }
+}
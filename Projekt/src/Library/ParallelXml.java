@@ -0,0 +1,254 @@
+package Library;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Paralelní načítání a ukládání library.xml pro velké katalogy.
+ * <p>
+ * Při načítání jedno vlákno jen čte XML a sbírá texty elementů knih do dávek, z dávek
+ * vyrábí objekty {@link Book} pool pracovních vláken. Dávky putují omezenou frontou,
+ * takže čtení nepředběhne zpracování o víc než pár dávek, a příjemce dostává knihy
+ * ve stejném pořadí jako v souboru. Při ukládání pracovní vlákna převádí úseky knih
+ * na bajty XML souběžně a jediný zapisovač je skládá do souboru v původním pořadí.
+ */
+class ParallelXml {
+    private static final int BATCH_SIZE = 1000;
+    private static final int CHUNK_SIZE = 2000;
+    // Stejná hlavička jako píše XMLStreamWriter ve XmlHandler
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><library";
+    private static final byte[] FOOTER = "</library>".getBytes(StandardCharsets.UTF_8);
+    private static final XmlCodec<Book> BOOK_CODEC = XmlCodec.forClass(Book.class);
+    private static final CompletableFuture<List<Book>> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * @return výchozí počet pracovních vláken podle počtu jader
+     */
+    static int defaultWorkers() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Načte knihy ze souboru, příjemce se volá na volajícím vlákně v pořadí knih v souboru
+     * @param path XML soubor knihovny
+     * @param workers počet vláken převádějících texty na knihy
+     * @param consumer příjemce načtených knih
+     * @return číslo posledního záznamu deníku z kořene souboru, 0 pokud tam není
+     * @throws IOException chyba při čtení souboru
+     * @throws XMLStreamException soubor není platné XML
+     */
+    static long load(Path path, int workers, Consumer<Book> consumer) throws IOException, XMLStreamException {
+        ExecutorService pool = newPool("xml-load", workers);
+        BlockingQueue<Future<List<Book>>> batches = new ArrayBlockingQueue<>(workers * 4);
+        AtomicLong journalSequence = new AtomicLong();
+        Thread tokenizer = new Thread(() -> tokenize(path, pool, batches, journalSequence), "xml-tokenizer");
+        tokenizer.setDaemon(true);
+        tokenizer.start();
+        try {
+            while (true) {
+                Future<List<Book>> batch = batches.take();
+                if (batch == END) {
+                    break;
+                }
+                for (Book book : batch.get()) {
+                    consumer.accept(book);
+                }
+            }
+            return journalSequence.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + path, e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            // Při chybě příjemce se čtení zastaví, jinak by čekalo na plnou frontu
+            tokenizer.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Čte XML a posílá dávky surových textů knih ke zpracování, na konci pošle END
+     */
+    private static void tokenize(Path path, ExecutorService pool, BlockingQueue<Future<List<Book>>> batches,
+                                 AtomicLong journalSequence) {
+        List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            try (InputStream inputStream = XmlHandler.openLibrary(path)) {
+                XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+                List<String> fields = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("book")) {
+                            fields = new ArrayList<>(12);
+                        } else if (fields == null && reader.getLocalName().equals("library")) {
+                            String sequence = reader.getAttributeValue(null, XmlHandler.JOURNAL_ATTRIBUTE);
+                            if (sequence != null) {
+                                journalSequence.set(Long.parseLong(sequence));
+                            }
+                        } else if (fields != null) {
+                            fields.add(reader.getLocalName());
+                            fields.add(reader.getElementText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && fields != null
+                            && reader.getLocalName().equals("book")) {
+                        batch.add(fields.toArray(new String[0]));
+                        fields = null;
+                        if (batch.size() == BATCH_SIZE) {
+                            submit(pool, batches, batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                }
+                reader.close();
+                if (!batch.isEmpty()) {
+                    submit(pool, batches, batch);
+                }
+            }
+            batches.put(END);
+        } catch (InterruptedException e) {
+            // Načítání skončilo dřív, nikdo už nečeká
+        } catch (Exception e) {
+            try {
+                // Knihy před chybou se předají stejně jako při postupném čtení
+                if (!batch.isEmpty()) {
+                    submit(pool, batches, batch);
+                }
+                batches.put(CompletableFuture.failedFuture(e));
+                batches.put(END);
+            } catch (InterruptedException interrupted) {
+                // Načítání skončilo dřív, nikdo už nečeká
+            }
+        }
+    }
+
+    private static void submit(ExecutorService pool, BlockingQueue<Future<List<Book>>> batches, List<String[]> batch)
+            throws InterruptedException {
+        batches.put(pool.submit(() -> {
+            List<Book> books = new ArrayList<>(batch.size());
+            for (String[] fields : batch) {
+                Book book = BOOK_CODEC.newInstance();
+                for (int i = 0; i < fields.length; i += 2) {
+                    BOOK_CODEC.read(book, fields[i], fields[i + 1]);
+                }
+                books.add(book);
+            }
+            return books;
+        }));
+    }
+
+    /**
+     * Zapíše knihy jako XML, úseky knih převádí na XML souběžně
+     * @param books obsah knihovny
+     * @param outputStream cíl zápisu, zavírá ho volající
+     * @param workers počet vláken převádějících knihy na XML
+     * @param compress true pro GZIP, každý úsek se komprimuje zvlášť jako samostatný člen GZIP
+     * @param journalSequence číslo posledního záznamu deníku, který snapshot obsahuje, 0 bez deníku
+     * @throws IOException chyba při zápisu
+     * @throws XMLStreamException chyba při vytváření XML
+     */
+    static void save(List<Book> books, OutputStream outputStream, int workers, boolean compress, long journalSequence)
+            throws IOException, XMLStreamException {
+        ExecutorService pool = newPool("xml-save", workers);
+        try {
+            byte[] header = (journalSequence > 0
+                    ? HEADER + " " + XmlHandler.JOURNAL_ATTRIBUTE + "=\"" + journalSequence + "\">"
+                    : HEADER + ">").getBytes(StandardCharsets.UTF_8);
+            // Za sebou zapsané členy GZIP se načtou jako jeden soubor, komprese tak běží paralelně
+            outputStream.write(compress ? compress(header) : header);
+            Deque<Future<byte[]>> chunks = new ArrayDeque<>();
+            for (int from = 0; from < books.size(); from += CHUNK_SIZE) {
+                if (chunks.size() >= workers * 2) {
+                    // Zapisovač drží jen omezený počet hotových úseků v paměti
+                    outputStream.write(chunks.poll().get());
+                }
+                List<Book> chunk = books.subList(from, Math.min(books.size(), from + CHUNK_SIZE));
+                chunks.add(pool.submit(() -> encode(chunk, compress)));
+            }
+            while (!chunks.isEmpty()) {
+                outputStream.write(chunks.poll().get());
+            }
+            outputStream.write(compress ? compress(FOOTER) : FOOTER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving library", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] encode(List<Book> chunk, boolean compress) throws IOException, XMLStreamException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(chunk.size() * (compress ? 32 : 256));
+        try (OutputStream target = compress ? XmlHandler.compress(bytes) : bytes) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(target, "UTF-8");
+            for (Book book : chunk) {
+                writer.writeStartElement("book");
+                BOOK_CODEC.write(writer, book);
+                writer.writeEndElement();
+            }
+            writer.flush();
+            writer.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream target = XmlHandler.compress(bytes)) {
+            target.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ExecutorService newPool(String name, int workers) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Vybalí původní chybu z pracovního vlákna
+     */
+    private static IOException rethrow(Throwable cause) throws XMLStreamException {
+        if (cause instanceof XMLStreamException xmlException) {
+            throw xmlException;
+        }
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return new IOException(cause);
+    }
+}
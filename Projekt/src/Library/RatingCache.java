@@ -0,0 +1,112 @@
+package Library;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Omezená cache souhrnů hodnocení podle ISBN. Při zaplnění vypadne nejdéle nepoužitá kniha.
+ * DatabaseMan ji při uložení hodnocení aktualizuje a při smazání opraví nebo zneplatní,
+ * takže platí jen pokud se hodnocení mění přes DatabaseMan.
+ * <p>
+ * Souhrn spočítaný z databáze se vloží jen pokud se hodnocení knihy od začátku dotazu
+ * nezměnilo. Každá změna zvýší generaci knihy (ISBN se rozhazují do pevného počtu
+ * čítačů) a dokud změna probíhá, souhrny té knihy se nevkládají vůbec, dotaz mohl
+ * zápis vidět a přičtení nového hodnocení by ho započítalo podruhé.
+ */
+public class RatingCache {
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Map<String, RatingStats> stats;
+    private final long[] generations = new long[GENERATION_STRIPES];
+    private final int[] writing = new int[GENERATION_STRIPES];
+    // Zvyšuje ho clear(), zneplatní generace všech knih najednou
+    private long epoch;
+
+    public RatingCache(int maxSize) {
+        this.stats = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RatingStats> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized RatingStats get(String isbn) {
+        return stats.get(isbn);
+    }
+
+    /**
+     * Generace hodnocení knihy, zjišťuje se před dotazem do databáze
+     * @param isbn ISBN knihy
+     * @return generace pro {@link #put(String, RatingStats, long)}
+     */
+    public synchronized long generation(String isbn) {
+        return epoch + generations[stripe(isbn)];
+    }
+
+    /**
+     * Vloží souhrn, pokud se hodnocení knihy od zjištění generace nezměnilo a právě se nemění
+     * @param isbn ISBN knihy
+     * @param ratingStats souhrn spočítaný z databáze
+     * @param generation generace zjištěná před dotazem
+     */
+    public synchronized void put(String isbn, RatingStats ratingStats, long generation) {
+        int stripe = stripe(isbn);
+        if (writing[stripe] == 0 && epoch + generations[stripe] == generation) {
+            stats.put(isbn, ratingStats);
+        }
+    }
+
+    /**
+     * Ohlásí začátek změny hodnocení knihy, po zápisu se musí zavolat {@link #changed(String)}
+     * @param isbn ISBN knihy
+     */
+    public synchronized void changing(String isbn) {
+        int stripe = stripe(isbn);
+        writing[stripe]++;
+        generations[stripe]++;
+    }
+
+    /**
+     * Ohlásí konec změny hodnocení knihy, i neúspěšné
+     * @param isbn ISBN knihy
+     */
+    public synchronized void changed(String isbn) {
+        int stripe = stripe(isbn);
+        writing[stripe]--;
+        generations[stripe]++;
+    }
+
+    /**
+     * Započítá nové hodnocení, pokud je kniha v cache
+     * @param isbn ISBN knihy
+     * @param rating nové hodnocení
+     */
+    public synchronized void added(String isbn, int rating) {
+        stats.computeIfPresent(isbn, (key, current) -> current.plus(rating));
+    }
+
+    /**
+     * Odečte smazané hodnocení, pokud je kniha v cache
+     * @param isbn ISBN knihy
+     * @param rating smazané hodnocení
+     */
+    public synchronized void removed(String isbn, int rating) {
+        stats.computeIfPresent(isbn, (key, current) -> current.minus(rating));
+    }
+
+    public synchronized void invalidate(String isbn) {
+        stats.remove(isbn);
+        generations[stripe(isbn)]++;
+    }
+
+    public synchronized void clear() {
+        stats.clear();
+        epoch++;
+    }
+
+    private static int stripe(String isbn) {
+        return (Objects.hashCode(isbn) & 0x7fffffff) % GENERATION_STRIPES;
+    }
+}
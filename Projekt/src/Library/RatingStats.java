@@ -0,0 +1,93 @@
+package Library;
+
+import java.util.Arrays;
+
+/**
+ * Souhrn hodnocení jedné knihy: počet, průměr, minimum, maximum a histogram hodnocení 0-10.
+ * Objekt je neměnný, přidání nebo odebrání hodnocení vrací nový souhrn.
+ */
+public class RatingStats {
+    public static final int MAX_RATING = 10;
+    public static final RatingStats EMPTY = new RatingStats(new int[MAX_RATING + 1]);
+
+    private final int[] histogram;
+    private final int count;
+    private final long sum;
+
+    RatingStats(int[] histogram) {
+        this.histogram = histogram;
+        int count = 0;
+        long sum = 0;
+        for (int rating = 0; rating < histogram.length; rating++) {
+            count += histogram[rating];
+            sum += (long) rating * histogram[rating];
+        }
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return průměrné hodnocení, 0 pokud kniha nemá žádné hodnocení
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return nejnižší hodnocení, -1 pokud kniha nemá žádné hodnocení
+     */
+    public int getMin() {
+        for (int rating = 0; rating < histogram.length; rating++) {
+            if (histogram[rating] > 0) {
+                return rating;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return nejvyšší hodnocení, -1 pokud kniha nemá žádné hodnocení
+     */
+    public int getMax() {
+        for (int rating = histogram.length - 1; rating >= 0; rating--) {
+            if (histogram[rating] > 0) {
+                return rating;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param rating hodnocení 0-10
+     * @return kolikrát kniha dostala dané hodnocení
+     */
+    public int getCount(int rating) {
+        return rating < 0 || rating > MAX_RATING ? 0 : histogram[rating];
+    }
+
+    RatingStats plus(int rating) {
+        return adjust(rating, 1);
+    }
+
+    RatingStats minus(int rating) {
+        return adjust(rating, -1);
+    }
+
+    private RatingStats adjust(int rating, int delta) {
+        if (rating < 0 || rating > MAX_RATING || histogram[rating] + delta < 0) {
+            return this;
+        }
+        int[] copy = Arrays.copyOf(histogram, histogram.length);
+        copy[rating] += delta;
+        return new RatingStats(copy);
+    }
+
+    @Override
+    public String toString() {
+        return count == 0 ? "no reviews" : String.format("%.1f/10 (%d)", getMean(), count);
+    }
+}
@@ -0,0 +1,144 @@
+package Library;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronní přístup k hodnocením, aby pomalá databáze nezdržovala UI vlákno.
+ * <p>
+ * Každá operace běží na vlastním poolu vláken služby s připojením z {@link ConnectionPool}
+ * a vrací {@link CompletableFuture}. Operace, která nedoběhne do nastaveného limitu, skončí
+ * s {@link TimeoutException}. Zrušením future se přeruší i vlákno, které ji zpracovává,
+ * operace čekající ve frontě se vůbec nespustí. Výsledky se vrací na vlákně služby,
+ * UI si je musí předat přes Platform.runLater.
+ */
+public class ReviewService implements AutoCloseable {
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("db.saveReview");
+    private static final Metrics.Timer GET_REVIEWS_TIMER = Metrics.timer("db.getReviews");
+    private static final Metrics.Timer GET_PAGE_TIMER = Metrics.timer("db.getReviewsPage");
+    private static final Metrics.Timer GET_IDS_TIMER = Metrics.timer("db.getReviewIds");
+    private static final Metrics.Timer DELETE_TIMER = Metrics.timer("db.deleteReview");
+    private static final Metrics.Timer RATING_STATS_TIMER = Metrics.timer("db.getRatingStats");
+    private static final Metrics.Counter QUERIES = Metrics.counter("db.reviewQueries");
+    private static final Metrics.Counter SQL_ERRORS = Metrics.counter("db.sqlErrors");
+
+    private final ConnectionPool pool;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param pool pool připojení k databázi
+     * @param threads počet vláken pro databázové operace
+     * @param timeoutMillis po jaké době se operace vzdá
+     */
+    public ReviewService(ConnectionPool pool, int threads, long timeoutMillis) {
+        this.pool = pool;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "review-service-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Void> saveReview(String isbn, int rating, String note) {
+        return submit(SAVE_TIMER, connection -> {
+            DatabaseMan.saveReview(connection, isbn, rating, note);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Review>> getReviews(String isbn) {
+        return submit(GET_REVIEWS_TIMER, connection -> DatabaseMan.getReviews(connection, isbn));
+    }
+
+    /**
+     * @param isbn ISBN knihy
+     * @return všechna hodnocení knihy jako text, viz {@link DatabaseMan#formatReviews(List)}
+     */
+    public CompletableFuture<String> getReviewsString(String isbn) {
+        if (isbn.isEmpty()) {
+            return CompletableFuture.completedFuture("");
+        }
+        return submit(GET_REVIEWS_TIMER, connection -> DatabaseMan.formatReviews(DatabaseMan.getReviews(connection, isbn)));
+    }
+
+    /**
+     * @see DatabaseMan#getReviewsPage(Connection, String, int, int)
+     */
+    public CompletableFuture<List<Review>> getReviewsPage(String isbn, int afterId, int pageSize) {
+        return submit(GET_PAGE_TIMER, connection -> DatabaseMan.getReviewsPage(connection, isbn, afterId, pageSize));
+    }
+
+    public CompletableFuture<List<Integer>> getReviewIds(String isbn) {
+        return submit(GET_IDS_TIMER, connection -> DatabaseMan.getReviewIds(connection, isbn));
+    }
+
+    public CompletableFuture<Void> deleteReview(int id) {
+        return submit(DELETE_TIMER, connection -> {
+            DatabaseMan.deleteReview(connection, id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Map<String, RatingStats>> getRatingStats(Collection<String> isbns) {
+        return submit(RATING_STATS_TIMER, connection -> DatabaseMan.getRatingStats(connection, isbns));
+    }
+
+    /**
+     * Spustí databázovou operaci na vlákně služby
+     * @param timer časovač operace, měří se i čekání ve frontě a na připojení
+     * @param call operace nad půjčeným připojením
+     * @return future s výsledkem, chybou nebo TimeoutException po vypršení limitu
+     * @param <T> typ výsledku
+     */
+    private <T> CompletableFuture<T> submit(Metrics.Timer timer, SqlCall<T> call) {
+        QUERIES.increment();
+        long start = timer.start();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone()) {
+                // Zrušeno nebo vypršelo ještě ve frontě
+                return;
+            }
+            try (Connection connection = pool.getConnection()) {
+                result.complete(call.apply(connection));
+            } catch (Throwable e) {
+                if (e instanceof SQLException) {
+                    SQL_ERRORS.increment();
+                }
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            timer.stop(start);
+            if (result.isCancelled() || error instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        return result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ukončí vlákna služby, rozpracované operace se přeruší
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private interface SqlCall<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+}
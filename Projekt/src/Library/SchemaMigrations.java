@@ -0,0 +1,143 @@
+package Library;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Postupné úpravy databázového schématu.
+ * <p>
+ * Aktuální verze schématu je v tabulce SchemaVersion. Při startu se provedou jen migrace
+ * s vyšší verzí, každá ve vlastní transakci spolu se zápisem nové verze, takže se při chybě
+ * vrátí celá a při dalším startu se zkusí znovu. Nové úpravy se přidávají na konec seznamu
+ * {@link #MIGRATIONS}, už vydané migrace se nemění.
+ */
+public class SchemaMigrations {
+    private static final String VERSION_TABLE = "SchemaVersion";
+    private static final String CREATE_VERSION_TABLE_SQL = "CREATE TABLE SchemaVersion (" +
+            "version INT PRIMARY KEY," +
+            "description VARCHAR(255)," +
+            "appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")";
+    private static final String SELECT_VERSION_SQL = "SELECT MAX(version) FROM SchemaVersion";
+    private static final String INSERT_VERSION_SQL = "INSERT INTO SchemaVersion (version, description) VALUES (?, ?)";
+
+    private static final String CREATE_REVIEWS_TABLE_SQL = "CREATE TABLE BookReviews (" +
+            "id INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY," +
+            "isbn VARCHAR(20)," +
+            "rating INT," +
+            "note VARCHAR(255)" +
+            ")";
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create BookReviews", connection -> {
+                // Databáze z doby před migracemi už tabulku mají
+                if (!tableExists(connection, "BookReviews")) {
+                    execute(connection, CREATE_REVIEWS_TABLE_SQL);
+                }
+            }),
+            // Složený index pokrývá i samotné hledání podle ISBN, zvláštní index jen na ISBN není potřeba
+            new Migration(2, "Index reviews by ISBN and rating", connection ->
+                    execute(connection, "CREATE INDEX BookReviews_isbn_rating ON BookReviews (isbn, rating)")),
+            new Migration(3, "Index reviews by ISBN and id for paging", connection ->
+                    execute(connection, "CREATE INDEX BookReviews_isbn_id ON BookReviews (isbn, id)"))
+    );
+
+    /**
+     * Převede schéma na nejnovější verzi
+     * @param connection připojení k databázi
+     * @return počet provedených migrací
+     * @throws SQLException migrace se nepovedla, schéma zůstalo na poslední úspěšné verzi
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        if (!tableExists(connection, VERSION_TABLE)) {
+            execute(connection, CREATE_VERSION_TABLE_SQL);
+        }
+        int current = currentVersion(connection);
+        int applied = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                try {
+                    migration.action.apply(connection);
+                    try (PreparedStatement statement = connection.prepareStatement(INSERT_VERSION_SQL)) {
+                        statement.setInt(1, migration.version);
+                        statement.setString(2, migration.description);
+                        statement.executeUpdate();
+                    }
+                    connection.commit();
+                    applied++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return applied;
+    }
+
+    /**
+     * @param connection připojení k databázi
+     * @return verze schématu, 0 pro databázi bez provedených migrací
+     * @throws SQLException SQL výjimka
+     */
+    public static int currentVersion(Connection connection) throws SQLException {
+        if (!tableExists(connection, VERSION_TABLE)) {
+            return 0;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT_VERSION_SQL)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * @return verze schématu, kterou vytvoří {@link #migrate(Connection)}
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Zjistí, zda tabulka existuje v aktuálním schématu. Dotazuje se metadat přímo na jméno
+     * tabulky, neprochází všechny tabulky databáze.
+     * @param connection připojení k databázi
+     * @param table jméno tabulky bez uvozovek
+     * @return true pokud tabulka existuje
+     * @throws SQLException SQL výjimka
+     */
+    public static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        // Jména bez uvozovek ukládá Derby velkými písmeny
+        String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT)
+                : metaData.storesLowerCaseIdentifiers() ? table.toLowerCase(Locale.ROOT) : table;
+        String schema = connection.getSchema();
+        try (ResultSet tables = metaData.getTables(null, schema, name, new String[]{"TABLE"})) {
+            return tables.next();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private interface SqlAction {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private record Migration(int version, String description, SqlAction action) {
+    }
+}
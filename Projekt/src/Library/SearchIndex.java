@@ -0,0 +1,465 @@
+package Library;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Invertovaný index nad názvem, autorem a žánrem knih.
+ * <p>
+ * Texty se rozdělí na slova, převedou na malá písmena a odstraní se z nich diakritika,
+ * takže "Žánr" najde i dotaz "zanr". Slova jsou v seřazeném stromu, poslední slovo dotazu
+ * se proto hledá jako prefix (našeptávání při psaní). Shoda v názvu váží víc než v autorovi
+ * a ta víc než v žánru. Index se upravuje při každém přidání a odebrání knihy.
+ * <p>
+ * Knihy každého slova jsou rozdělené podle váhy a v rámci váhy seřazené podle názvu, tedy
+ * ve stejném pořadí jako výsledky. Hledání proto skončí, jakmile má dost výsledků a žádná
+ * další kniha už nemůže být lepší, a nemusí procházet všechny knihy častého slova.
+ * Prefix se rozšiřuje nejvýš na {@value #PREFIX_EXPANSION} slov: nejdřív častá slova, pak
+ * ostatní podle abecedy. U krátkého prefixu se tak vzácná slova za tímto počtem nehledají.
+ */
+public class SearchIndex {
+    private static final int TITLE_WEIGHT = 4;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int GENRE_WEIGHT = 1;
+    private static final int MAX_WEIGHT = TITLE_WEIGHT + AUTHOR_WEIGHT + GENRE_WEIGHT;
+    // Kolik slov se nejvýš prochází pro prefix, "k" by jinak znamenalo tisíce slov
+    private static final int PREFIX_EXPANSION = 64;
+    // Od kolika knih je slovo časté a má při rozšiřování prefixu přednost
+    private static final int FREQUENT_TERM = 32;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Latinka bez diakritiky pro znaky do LATIN_END, stejně jako rozklad přes Normalizer níže
+    private static final char LATIN_END = 0x250;
+    private static final String[] LATIN_FOLDED = new String[LATIN_END];
+
+    static {
+        for (char c = 0; c < LATIN_END; c++) {
+            LATIN_FOLDED[c] = DIACRITICS.matcher(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)).replaceAll("");
+        }
+    }
+
+    private static final Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<Book> BOOK_ORDER = Comparator.comparing(Book::getTitle, KEY_ORDER)
+            .thenComparing(Book::getIsbn, KEY_ORDER);
+    // Lepší shoda dřív, při stejné shodě podle názvu
+    private static final Comparator<Map.Entry<Book, Integer>> RANKING = Map.Entry.<Book, Integer>comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry::getKey, BOOK_ORDER);
+
+    // slovo -> knihy, které ho obsahují, podle váhy polí kde se slovo vyskytuje
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    // Podmnožina terms se slovy, která mají aspoň FREQUENT_TERM knih
+    private final NavigableMap<String, Postings> frequentTerms = new TreeMap<>();
+
+    /**
+     * Přidá knihu do indexu
+     * @param book přidaná kniha
+     */
+    public void add(Book book) {
+        tokens(book).forEach((term, weight) -> {
+            Postings postings = terms.computeIfAbsent(term, k -> new Postings());
+            postings.add(book, weight);
+            if (postings.size == FREQUENT_TERM) {
+                frequentTerms.put(term, postings);
+            }
+        });
+    }
+
+    /**
+     * Odebere knihu z indexu, pole knihy se od přidání nesmí změnit
+     * @param book odebraná kniha
+     */
+    public void remove(Book book) {
+        tokens(book).forEach((term, weight) -> {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(book, weight);
+                if (postings.size == FREQUENT_TERM - 1) {
+                    frequentTerms.remove(term);
+                }
+                if (postings.isEmpty()) {
+                    terms.remove(term);
+                }
+            }
+        });
+    }
+
+    /**
+     * Vyhledá knihy obsahující všechna slova dotazu, poslední slovo stačí jako začátek slova.
+     * @param query dotaz zadaný uživatelem
+     * @param limit maximální počet výsledků
+     * @return knihy seřazené od nejlepší shody
+     */
+    public List<Book> search(String query, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return List.of();
+        }
+        List<Postings> exact = new ArrayList<>(words.length);
+        for (int i = 0; i < words.length - 1; i++) {
+            Postings postings = terms.get(words[i]);
+            if (postings == null) {
+                return List.of();
+            }
+            exact.add(postings);
+        }
+        Map<String, Postings> prefixed = expand(words[words.length - 1]);
+        if (prefixed.isEmpty()) {
+            return List.of();
+        }
+        List<Postings> expanded = new ArrayList<>(prefixed.values());
+        long expandedSize = 0;
+        for (Postings postings : expanded) {
+            expandedSize += postings.size;
+        }
+
+        // Knihy se berou z nejvzácnějšího slova, nebo ze všech slov s prefixem, je-li jich méně.
+        // Jdou od nejvyšší váhy a ostatní slova dotazu mohou ke skóre přidat nejvýš others.
+        exact.sort(Comparator.comparingInt(postings -> postings.size));
+        boolean prefixDrives = exact.isEmpty() || expandedSize < exact.get(0).size;
+        int others = prefixDrives ? 0 : maxWeight(expanded);
+        for (Postings postings : exact.subList(prefixDrives ? 0 : 1, exact.size())) {
+            others += postings.maxWeight();
+        }
+        // U dotazu z jediného slova je skóre přímo váha, se kterou kniha z prefixu přišla
+        Query scoring = exact.isEmpty() ? null : new Query(Arrays.copyOf(words, words.length - 1), prefixed.keySet());
+        Set<Book> emitted = new HashSet<>();
+        PriorityQueue<Map.Entry<Book, Integer>> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        scan:
+        for (int weight = prefixDrives ? maxWeight(expanded) : exact.get(0).maxWeight(); weight > 0; weight--) {
+            int bound = weight + others;
+            Cursor cursor = prefixDrives ? new MergedCursor(expanded, weight, emitted) : exact.get(0).cursor(weight);
+            while (cursor.advance()) {
+                Map.Entry<Book, Integer> worst = best.size() == limit ? best.peek() : null;
+                if (worst != null && worst.getValue() > bound) {
+                    break scan;
+                }
+                if (worst != null && worst.getValue() == bound && BOOK_ORDER.compare(cursor.head, worst.getKey()) >= 0) {
+                    // Další knihy této váhy mají nanejvýš stejné skóre a dál v abecedě
+                    continue scan;
+                }
+                int score = scoring == null ? weight : scoring.score(cursor.head);
+                if (score > 0) {
+                    best.offer(Map.entry(cursor.head, score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        List<Book> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().getKey());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Najde slova začínající prefixem, nejdřív častá a pak ostatní podle abecedy
+     * @return nejvýš {@value #PREFIX_EXPANSION} slov s jejich knihami
+     */
+    private Map<String, Postings> expand(String prefix) {
+        String end = prefix + Character.MAX_VALUE;
+        Map<String, Postings> expanded = new LinkedHashMap<>();
+        for (Map.Entry<String, Postings> term : frequentTerms.subMap(prefix, true, end, false).entrySet()) {
+            if (expanded.size() == PREFIX_EXPANSION) {
+                return expanded;
+            }
+            expanded.put(term.getKey(), term.getValue());
+        }
+        for (Map.Entry<String, Postings> term : terms.subMap(prefix, true, end, false).entrySet()) {
+            if (expanded.size() == PREFIX_EXPANSION) {
+                break;
+            }
+            expanded.putIfAbsent(term.getKey(), term.getValue());
+        }
+        return expanded;
+    }
+
+    private static int maxWeight(List<Postings> postings) {
+        int max = 0;
+        for (Postings candidate : postings) {
+            max = Math.max(max, candidate.maxWeight());
+        }
+        return max;
+    }
+
+    private static Map<String, Integer> tokens(Book book) {
+        Map<String, Integer> tokens = new HashMap<>();
+        addTokens(tokens, book.getTitle(), TITLE_WEIGHT);
+        addTokens(tokens, book.getAuthor(), AUTHOR_WEIGHT);
+        addTokens(tokens, book.getGenre(), GENRE_WEIGHT);
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String text, int weight) {
+        for (String token : new HashSet<>(Arrays.asList(tokenize(text)))) {
+            tokens.merge(token, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * Rozdělí text na slova bez diakritiky a malými písmeny
+     * @param text vstupní text
+     * @return normalizovaná slova
+     */
+    static String[] tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return new String[0];
+        }
+        String[] latin = tokenizeLatin(text);
+        if (latin != null) {
+            return latin;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        String[] words = SEPARATORS.split(normalized.toLowerCase(Locale.ROOT));
+        if (words.length > 0 && words[0].isEmpty()) {
+            return Arrays.copyOfRange(words, 1, words.length);
+        }
+        return words;
+    }
+
+    /**
+     * Rychlá cesta pro běžný text v latince, obejde se bez normalizace a regulárních výrazů.
+     * Hledání ji volá pro každou zvažovanou knihu.
+     * @return slova, null pokud text obsahuje znak mimo tabulku
+     */
+    private static String[] tokenizeLatin(String text) {
+        List<String> words = new ArrayList<>(4);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= LATIN_END) {
+                return null;
+            }
+            String folded = LATIN_FOLDED[c];
+            for (int j = 0; j < folded.length(); j++) {
+                char base = folded.charAt(j);
+                if (isWordChar(base)) {
+                    word.append(Character.toLowerCase(base));
+                } else if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Písmeno nebo číslice, stejně jako {@code \p{L}} a {@code \p{N}} v {@link #SEPARATORS}
+     */
+    private static boolean isWordChar(char c) {
+        return switch (Character.getType(c)) {
+            case Character.UPPERCASE_LETTER, Character.LOWERCASE_LETTER, Character.TITLECASE_LETTER,
+                 Character.MODIFIER_LETTER, Character.OTHER_LETTER, Character.DECIMAL_DIGIT_NUMBER,
+                 Character.LETTER_NUMBER, Character.OTHER_NUMBER -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Spočítá skóre kandidáta ze slov jeho vlastních polí
+     */
+    private static final class Query {
+        private final String[] exact;
+        private final Set<String> prefixed;
+
+        Query(String[] exact, Set<String> prefixed) {
+            this.exact = exact;
+            this.prefixed = prefixed;
+        }
+
+        /**
+         * @return součet vah slov dotazu v knize, 0 pokud některé slovo chybí
+         */
+        int score(Book book) {
+            Map<String, Integer> tokens = tokens(book);
+            int score = 0;
+            for (String word : exact) {
+                Integer weight = tokens.get(word);
+                if (weight == null) {
+                    return 0;
+                }
+                score += weight;
+            }
+            int prefixWeight = 0;
+            for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+                if (prefixed.contains(token.getKey())) {
+                    prefixWeight = Math.max(prefixWeight, token.getValue());
+                }
+            }
+            return prefixWeight == 0 ? 0 : score + prefixWeight;
+        }
+    }
+
+    /**
+     * Knihy jednoho slova rozdělené podle váhy, v rámci váhy seřazené podle názvu a ISBN.
+     * Kopie se stejným názvem i ISBN sdílí jeden záznam se seznamem knih.
+     */
+    private static final class Postings {
+        @SuppressWarnings("unchecked")
+        private final NavigableMap<Book, Object>[] byWeight = new NavigableMap[MAX_WEIGHT + 1];
+        private int size;
+
+        void add(Book book, int weight) {
+            if (byWeight[weight] == null) {
+                byWeight[weight] = new TreeMap<>(BOOK_ORDER);
+            }
+            byWeight[weight].merge(book, book, (existing, added) -> {
+                if (existing instanceof Book copy) {
+                    List<Book> copies = new ArrayList<>(2);
+                    copies.add(copy);
+                    copies.add(book);
+                    return copies;
+                }
+                @SuppressWarnings("unchecked")
+                List<Book> copies = (List<Book>) existing;
+                copies.add(book);
+                return copies;
+            });
+            size++;
+        }
+
+        void remove(Book book, int weight) {
+            NavigableMap<Book, Object> books = byWeight[weight];
+            Object existing = books == null ? null : books.get(book);
+            if (existing == book) {
+                books.remove(book);
+            } else if (existing instanceof List<?> copies && copies.remove(book)) {
+                if (copies.size() == 1) {
+                    // Klíč záznamu může být právě odebraná kniha, záznam se proto vloží znovu
+                    Book remaining = (Book) copies.get(0);
+                    books.remove(book);
+                    books.put(remaining, remaining);
+                }
+            } else {
+                return;
+            }
+            if (books.isEmpty()) {
+                byWeight[weight] = null;
+            }
+            size--;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int maxWeight() {
+            for (int weight = MAX_WEIGHT; weight > 0; weight--) {
+                if (byWeight[weight] != null) {
+                    return weight;
+                }
+            }
+            return 0;
+        }
+
+        PostingCursor cursor(int weight) {
+            NavigableMap<Book, Object> books = byWeight[weight];
+            return new PostingCursor(books == null ? List.of() : books.values());
+        }
+    }
+
+    /**
+     * Prochází knihy seřazené podle názvu, aktuální kniha je v {@link #head}
+     */
+    private abstract static class Cursor {
+        Book head;
+
+        /**
+         * @return false pokud už další kniha není
+         */
+        abstract boolean advance();
+    }
+
+    /**
+     * Knihy jedné váhy jednoho slova
+     */
+    private static final class PostingCursor extends Cursor {
+        private final Iterator<Object> entries;
+        private Iterator<?> copies = Collections.emptyIterator();
+
+        PostingCursor(Collection<Object> entries) {
+            this.entries = entries.iterator();
+        }
+
+        @Override
+        boolean advance() {
+            if (copies.hasNext()) {
+                head = (Book) copies.next();
+                return true;
+            }
+            if (!entries.hasNext()) {
+                head = null;
+                return false;
+            }
+            Object entry = entries.next();
+            if (entry instanceof Book book) {
+                head = book;
+            } else {
+                copies = ((List<?>) entry).iterator();
+                head = (Book) copies.next();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Slévá knihy jedné váhy z více slov podle názvu. Kniha, která už prošla (s vyšší vahou
+     * nebo z jiného slova), se přeskočí.
+     */
+    private static final class MergedCursor extends Cursor {
+        private final PriorityQueue<PostingCursor> merge;
+        private final Set<Book> emitted;
+
+        MergedCursor(List<Postings> postings, int weight, Set<Book> emitted) {
+            this.merge = new PriorityQueue<>(postings.size(), (a, b) -> BOOK_ORDER.compare(a.head, b.head));
+            this.emitted = emitted;
+            for (Postings candidate : postings) {
+                PostingCursor cursor = candidate.cursor(weight);
+                if (cursor.advance()) {
+                    merge.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        boolean advance() {
+            while (!merge.isEmpty()) {
+                PostingCursor cursor = merge.poll();
+                Book book = cursor.head;
+                if (cursor.advance()) {
+                    merge.add(cursor);
+                }
+                if (emitted.add(book)) {
+                    head = book;
+                    return true;
+                }
+            }
+            head = null;
+            return false;
+        }
+    }
+}
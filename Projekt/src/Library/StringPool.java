@@ -0,0 +1,36 @@
+package Library;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Slovník opakujících se řetězců. Autorů a žánrů je v knihovně málo oproti počtu knih,
+ * takže knihy se stejným autorem nebo žánrem sdílí jednu instanci řetězce místo vlastní kopie
+ * a porovnání takových řetězců skončí hned na shodě referencí.
+ */
+public class StringPool {
+    public static final StringPool AUTHORS = new StringPool();
+    public static final StringPool GENRES = new StringPool();
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * Vrátí sdílenou instanci řetězce se stejným obsahem
+     * @param value řetězec
+     * @return sdílená instance, null pro null
+     */
+    public String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = values.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * @return počet různých řetězců ve slovníku
+     */
+    public int size() {
+        return values.size();
+    }
+}
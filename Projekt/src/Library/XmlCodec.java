@@ -0,0 +1,158 @@
+package Library;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Převodník mezi objektem a jeho XML elementy podle anotací {@link SaveLib} a {@link LoadLib}.
+ * Reflexe proběhne jen jednou pro každou třídu, dál se volají připravené MethodHandle.
+ * @param <T> třída se kterou převodník pracuje
+ */
+public class XmlCodec<T> {
+
+    private static final ClassValue<XmlCodec<?>> CODECS = new ClassValue<>() {
+        @Override
+        protected XmlCodec<?> computeValue(Class<?> type) {
+            return new XmlCodec<>(type);
+        }
+    };
+
+    private static final Map<Class<?>, Function<String, Object>> PARSERS = Map.of(
+            String.class, value -> value,
+            int.class, Integer::parseInt,
+            Integer.class, Integer::valueOf,
+            long.class, Long::parseLong,
+            Long.class, Long::valueOf,
+            double.class, Double::parseDouble,
+            Double.class, Double::valueOf,
+            boolean.class, Boolean::parseBoolean,
+            Boolean.class, Boolean::valueOf
+    );
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<T> type;
+    private final String[] names;
+    private final MethodHandle[] getters;
+    private final Map<String, Setter> setters;
+    private final MethodHandle constructor;
+
+    private XmlCodec(Class<T> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<String> names = new ArrayList<>();
+        List<MethodHandle> getters = new ArrayList<>();
+        this.setters = new HashMap<>();
+        try {
+            for (Method method : type.getDeclaredMethods()) {
+                SaveLib save = method.getAnnotation(SaveLib.class);
+                if (save != null) {
+                    method.setAccessible(true);
+                    names.add(save.name());
+                    getters.add(lookup.unreflect(method).asType(GETTER_TYPE));
+                }
+                LoadLib load = method.getAnnotation(LoadLib.class);
+                if (load != null) {
+                    Class<?> parameter = method.getParameterTypes()[0];
+                    Function<String, Object> parser = PARSERS.get(parameter);
+                    if (parser == null) {
+                        throw new IllegalArgumentException("Unsupported field type: " + parameter.getName());
+                    }
+                    method.setAccessible(true);
+                    setters.put(load.name(), new Setter(lookup.unreflect(method).asType(SETTER_TYPE), parser));
+                }
+            }
+            this.constructor = lookup.unreflectConstructor(type.getDeclaredConstructor()).asType(CONSTRUCTOR_TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Class " + type.getName() + " cannot be mapped to XML", e);
+        }
+        this.names = names.toArray(new String[0]);
+        this.getters = getters.toArray(new MethodHandle[0]);
+    }
+
+    /**
+     * Vrátí převodník pro danou třídu, vytvoří se jen při prvním použití
+     * @param type třída s anotovanými gettery a settery
+     * @return převodník pro třídu
+     * @param <T> typ třídy
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> XmlCodec<T> forClass(Class<T> type) {
+        return (XmlCodec<T>) CODECS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Vytvoří prázdnou instanci přes konstruktor bez parametrů
+     * @return nová instance
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        try {
+            return (T) (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Zapíše všechny atributy označené {@link SaveLib} jako elementy
+     * @param writer zapisovatel do souboru
+     * @param object objekt co se má zapsat
+     * @throws XMLStreamException XML error
+     */
+    public void write(XMLStreamWriter writer, T object) throws XMLStreamException {
+        for (int i = 0; i < getters.length; i++) {
+            Object value;
+            try {
+                value = (Object) getters[i].invokeExact((Object) object);
+            } catch (Throwable e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (value == null) {
+                continue;
+            }
+            writer.writeStartElement(names[i]);
+            writer.writeCharacters(value.toString());
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Nastaví atribut označený {@link LoadLib} podle názvu elementu
+     * @param object objekt do kterého se zapisuje
+     * @param fieldName název atributu
+     * @param value textová hodnota atributu
+     * @return false pokud třída atribut s tímto názvem nemá
+     */
+    public boolean read(T object, String fieldName, String value) {
+        Setter setter = setters.get(fieldName);
+        if (setter == null) {
+            return false;
+        }
+        try {
+            setter.handle.invokeExact((Object) object, setter.parser.apply(value));
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    private record Setter(MethodHandle handle, Function<String, Object> parser) {
+    }
+}
@@ -2,62 +2,197 @@ package Library;
 
 import javax.xml.stream.*;
 import java.io.*;
-import java.lang.reflect.Method;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Ukládání a načítání katalogu jako XML. Katalog může být komprimovaný GZIPem, viz
+ * {@link LibraryFiles#compressCatalog()}, načítání kompresi pozná podle hlavičky souboru.
+ */
 public class XmlHandler {
-    private static final String FILE_NAME = "library.xml";
+    private static final XmlCodec<Book> BOOK_CODEC = XmlCodec.forClass(Book.class);
+
+    // Od této velikosti se knihovna ukládá paralelně
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int DEFLATE_BUFFER_SIZE = 1 << 16;
+    // Značky v XML se opakují, i nejrychlejší komprese zmenší soubor několikanásobně
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    // Kompakce deníku a autosave by jinak mohly psát do stejného dočasného souboru
+    private static final Object SAVE_LOCK = new Object();
+    // Atribut kořene s číslem posledního záznamu deníku, který už snapshot obsahuje
+    static final String JOURNAL_ATTRIBUTE = "journal";
+
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("xml.save");
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("xml.load");
+    private static final Metrics.Counter BOOKS_SAVED = Metrics.counter("books.saved");
+    private static final Metrics.Counter BOOKS_LOADED = Metrics.counter("books.loaded");
 
     /**
      * uloží knihovnu do xml souboru
      * @param books obsah knihovny
+     * @return true pokud se knihovnu podařilo uložit
      */
-    public static void saveLibrary(List<Book> books) {
-        try {
-            XMLOutputFactory factory = XMLOutputFactory.newInstance();
-            OutputStream outputStream = new FileOutputStream(FILE_NAME);
-            XMLStreamWriter writer = factory.createXMLStreamWriter(outputStream, "UTF-8");
+    public static boolean saveLibrary(List<Book> books) {
+        return saveLibrary(books, 0);
+    }
+
+    /**
+     * uloží knihovnu do xml souboru jako snapshot deníku
+     * @param books obsah knihovny
+     * @param journalSequence číslo posledního záznamu deníku, který snapshot obsahuje, 0 bez deníku
+     * @return true pokud se knihovnu podařilo uložit
+     */
+    public static boolean saveLibrary(List<Book> books, long journalSequence) {
+        Path path = LibraryFiles.catalog();
+        return saveLibrary(books, path, LibraryFiles.compressCatalog(), journalSequence);
+    }
+
+    /**
+     * uloží knihovnu do zadaného xml souboru, komprimovaně podle {@link LibraryFiles#compressCatalog()}
+     * @param books obsah knihovny
+     * @param path cesta k souboru
+     * @return true pokud se knihovnu podařilo uložit
+     */
+    public static boolean saveLibrary(List<Book> books, Path path) {
+        return saveLibrary(books, path, LibraryFiles.compressCatalog());
+    }
 
-            writer.writeStartDocument("UTF-8", "1.0");
-            writer.writeStartElement("library");
+    /**
+     * uloží knihovnu do zadaného xml souboru. Zapisuje se do dočasného souboru vedle cílového,
+     * který ho po úplném zápisu atomicky nahradí, takže přerušené ukládání nepoškodí
+     * předchozí verzi souboru.
+     * @param books obsah knihovny
+     * @param path cesta k souboru
+     * @param compress true pro soubor komprimovaný GZIPem
+     * @return true pokud se knihovnu podařilo uložit
+     */
+    public static boolean saveLibrary(List<Book> books, Path path, boolean compress) {
+        return saveLibrary(books, path, compress, 0);
+    }
 
-            for (Book book : books) {
-                writer.writeStartElement("book");
-                writeBook(writer, book);
-                writer.writeEndElement();
+    private static boolean saveLibrary(List<Book> books, Path path, boolean compress, long journalSequence) {
+        long start = SAVE_TIMER.start();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        boolean saved = false;
+        synchronized (SAVE_LOCK) {
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                     OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+                    int workers = ParallelXml.defaultWorkers();
+                    if (books.size() >= PARALLEL_THRESHOLD && workers > 1) {
+                        ParallelXml.save(books, outputStream, workers, compress, journalSequence);
+                    } else if (compress) {
+                        try (OutputStream compressed = compress(outputStream)) {
+                            writeLibrary(books, compressed, journalSequence);
+                        }
+                    } else {
+                        writeLibrary(books, outputStream, journalSequence);
+                    }
+                    outputStream.flush();
+                    // Na disku musí být celý obsah dřív, než soubor nahradí původní
+                    channel.force(true);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // Kompakce deníku smaže starý deník hned po uložení, přejmenování už musí být na disku
+                syncDirectory(path.toAbsolutePath().getParent());
+                BOOKS_SAVED.add(books.size());
+                saved = true;
+            } catch (IOException | XMLStreamException e) {
+                e.printStackTrace();
+                deleteQuietly(temp);
             }
+        }
+        SAVE_TIMER.stop(start);
+        return saved;
+    }
+
+    private static void writeLibrary(List<Book> books, OutputStream outputStream, long journalSequence)
+            throws XMLStreamException {
+        XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        XMLStreamWriter writer = factory.createXMLStreamWriter(outputStream, "UTF-8");
 
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("library");
+        if (journalSequence > 0) {
+            writer.writeAttribute(JOURNAL_ATTRIBUTE, Long.toString(journalSequence));
+        }
+
+        for (Book book : books) {
+            writer.writeStartElement("book");
+            BOOK_CODEC.write(writer, book);
             writer.writeEndElement();
-            writer.writeEndDocument();
-            writer.flush();
-            writer.close();
-        } catch (FileNotFoundException | XMLStreamException e) {
-            e.printStackTrace();
         }
+
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
     }
 
     /**
-     * zapíše knihu do XML souboru
-     * @param writer zapisovatel do souboru
-     * @param book kniha co se má zapsat
-     * @throws XMLStreamException XML error
+     * Obalí proud kompresí GZIP. Zavření kompresi dokončí, ale podkladový proud nechá otevřený.
+     * @param outputStream podkladový proud
+     * @return proud, který zapisuje komprimovaná data
+     * @throws IOException chyba při zápisu hlavičky
      */
-    private static void writeBook(XMLStreamWriter writer, Book book) throws XMLStreamException {
-        Method[] methods = Book.class.getDeclaredMethods();
-        for (Method method : methods) {
-            if (method.isAnnotationPresent(SaveLib.class)) {
-                SaveLib annotation = method.getAnnotation(SaveLib.class);
-                String name = annotation.name();
+    static OutputStream compress(OutputStream outputStream) throws IOException {
+        // Bez bufferu by každý drobný zápis XML writeru volal kompresor zvlášť
+        return new BufferedOutputStream(new GZIPOutputStream(outputStream, DEFLATE_BUFFER_SIZE) {
+            {
+                def.setLevel(COMPRESSION_LEVEL);
+            }
+
+            @Override
+            public void close() throws IOException {
                 try {
-                    Object value = method.invoke(book);
-                    writer.writeStartElement(name);
-                    writer.writeCharacters(value.toString());
-                    writer.writeEndElement();
-                } catch (Exception e) {
-                    e.printStackTrace();
+                    finish();
+                } finally {
+                    def.end();
                 }
             }
+        }, DEFLATE_BUFFER_SIZE);
+    }
+
+    /**
+     * Otevře soubor katalogu pro čtení s velkým bufferem. Komprimovaný soubor pozná podle
+     * hlavičky GZIP a rovnou ho rozbaluje, čte se pořád postupně.
+     * @param path cesta k souboru
+     * @return proud s XML katalogu
+     * @throws IOException soubor nejde otevřít
+     */
+    static InputStream openLibrary(Path path) throws IOException {
+        InputStream inputStream = new BufferedInputStream(Channels.newInputStream(FileChannel.open(path)), BUFFER_SIZE);
+        try {
+            inputStream.mark(2);
+            int first = inputStream.read();
+            int second = inputStream.read();
+            inputStream.reset();
+            if (first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == GZIPInputStream.GZIP_MAGIC >>> 8) {
+                return new GZIPInputStream(inputStream, DEFLATE_BUFFER_SIZE);
+            }
+            return inputStream;
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
         }
     }
 
@@ -67,60 +202,193 @@ public class XmlHandler {
      */
     public static List<Book> loadLibrary() {
         List<Book> books = new ArrayList<>();
+        loadLibrary(books::add);
+        return books;
+    }
+
+    /**
+     * Načte knihovnu z XML souboru a každou knihu hned předá dál, v paměti je vždy jen jedna kniha
+     * @param consumer příjemce načtených knih
+     */
+    public static void loadLibrary(Consumer<Book> consumer) {
+        try (Stream<Book> books = streamLibrary()) {
+            books.forEach(consumer);
+        }
+    }
+
+    /**
+     * Načte knihovnu z XML souboru paralelně, viz {@link ParallelXml}. Příjemce dostává knihy
+     * na volajícím vlákně ve stejném pořadí jako {@link #loadLibrary(Consumer)}.
+     * @param consumer příjemce načtených knih
+     * @return číslo posledního záznamu deníku, který katalog obsahuje, viz {@link LibraryJournal#replay}
+     * @throws IOException katalog nejde přečíst nebo není platné XML
+     */
+    public static long loadLibraryParallel(Consumer<Book> consumer) throws IOException {
+        return loadLibraryParallel(LibraryFiles.catalog(), consumer);
+    }
+
+    /**
+     * Načte knihovnu ze zadaného XML souboru paralelně
+     * @param path cesta k souboru
+     * @param consumer příjemce načtených knih
+     * @return číslo posledního záznamu deníku, který katalog obsahuje, 0 pokud žádný
+     * @throws IOException soubor nejde přečíst nebo není platné XML, příjemce mohl dostat
+     *                     jen část knih a číslo záznamu deníku není známé
+     */
+    public static long loadLibraryParallel(Path path, Consumer<Book> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            System.out.println("Library was not found, it will be created upon exit");
+            return 0;
+        }
+        long start = LOAD_TIMER.start();
         try {
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            InputStream inputStream = new FileInputStream(FILE_NAME);
-            XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
-
-            Book book = null;
-            while (reader.hasNext()) {
-                int event = reader.next();
-                if (event == XMLStreamConstants.START_ELEMENT) {
-                    if (reader.getLocalName().equals("book")) {
-                        book = new Book();
-                    } else if (book != null) {
-                        String localName = reader.getLocalName();
-                        setBookField(book, localName, reader.getElementText());
-                    }
-                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("book")) {
-                    books.add(book);
-                }
-            }
-            reader.close();
-        } catch (FileNotFoundException e) {
+            return ParallelXml.load(path, ParallelXml.defaultWorkers(), book -> {
+                BOOKS_LOADED.increment();
+                consumer.accept(book);
+            });
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid library file " + path, e);
+        } finally {
+            LOAD_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Otevře XML soubor jako proud knih, knihy se čtou až při průchodu proudem.
+     * Proud je potřeba zavřít, ideálně přes try-with-resources.
+     * @return proud knih ze souboru, prázdný pokud soubor neexistuje
+     */
+    public static Stream<Book> streamLibrary() {
+        return streamLibrary(LibraryFiles.catalog());
+    }
+
+    /**
+     * Otevře zadaný XML soubor jako proud knih
+     * @param path cesta k souboru
+     * @return proud knih ze souboru, prázdný pokud soubor neexistuje
+     */
+    public static Stream<Book> streamLibrary(Path path) {
+        InputStream inputStream;
+        try {
+            inputStream = openLibrary(path);
+        } catch (NoSuchFileException e) {
             System.out.println("Library was not found, it will be created upon exit");
-        } catch (XMLStreamException e){
+            return Stream.empty();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Stream.empty();
+        }
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+            BookIterator iterator = new BookIterator(reader, inputStream, LOAD_TIMER.start());
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                            Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(iterator::close);
+        } catch (XMLStreamException e) {
+            e.printStackTrace();
+            closeQuietly(inputStream);
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Zapíše na disk změny v adresáři (přejmenování souboru). Kde adresář nejde otevřít
+     * jako soubor (Windows), se přeskočí, tam je přejmenování trvalé samo.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Adresář nejde otevřít
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        return books;
     }
 
     /**
-     * Z XML načte data knihy a přislušně vyplní atribut knihy
-     * @param book kniha do které se zapisuje
-     * @param fieldName název atributu který se má vložit
-     * @param value hodnota atributu
+     * Prochází StAX readerem a vrací knihy jednu po druhé
      */
-    private static void setBookField(Book book, String fieldName, String value) {
-        Method[] methods = Book.class.getDeclaredMethods();
-        for (Method method : methods) {
-            if (method.isAnnotationPresent(LoadLib.class)) {
-                LoadLib annotation = method.getAnnotation(LoadLib.class);
-                if (annotation.name().equals(fieldName)) {
-                    method.setAccessible(true);
-                    try {
-                        switch (method.getParameterTypes()[0].getName()) {
-                            case "int" -> method.invoke(book, Integer.parseInt(value));
-                            case "boolean" -> method.invoke(book, Boolean.parseBoolean(value));
-                            case "java.lang.String" -> method.invoke(book, value);
-                            default -> throw new IllegalArgumentException("Unsupported field type: " + method.getParameterTypes()[0].getName());
+    private static class BookIterator implements Iterator<Book> {
+        private final XMLStreamReader reader;
+        private final InputStream inputStream;
+        private final long start;
+        private Book next;
+        private boolean finished;
+
+        BookIterator(XMLStreamReader reader, InputStream inputStream, long start) {
+            this.reader = reader;
+            this.inputStream = inputStream;
+            this.start = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                next = readBook();
+                finished = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Book next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Book book = next;
+            next = null;
+            return book;
+        }
+
+        /**
+         * Přečte další knihu ze souboru
+         * @return kniha nebo null na konci souboru nebo při chybě
+         */
+        private Book readBook() {
+            try {
+                Book book = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("book")) {
+                            book = BOOK_CODEC.newInstance();
+                        } else if (book != null) {
+                            BOOK_CODEC.read(book, reader.getLocalName(), reader.getElementText());
                         }
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("book")) {
+                        BOOKS_LOADED.increment();
+                        return book;
                     }
-                    break;
                 }
+            } catch (XMLStreamException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+
+        void close() {
+            // Měří se celé načtení od otevření souboru po zavření proudu
+            LOAD_TIMER.stop(start);
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                e.printStackTrace();
             }
+            closeQuietly(inputStream);
         }
     }
 }
\ No newline at end of file